@@ -119,6 +119,9 @@ public class Automaton implements Serializable, Cloneable {
 	/** Singleton string. Null if not applicable. */
 	String singleton;
 	
+	/** Number of threads used by determinization (default: 1). */
+	static int determinize_threads = 1;
+	
 	/** Minimize always flag. */
 	static boolean minimize_always = false;
 	
@@ -156,6 +159,19 @@ public class Automaton implements Serializable, Cloneable {
 		minimization = algorithm;
 	}
 	
+	/**
+	 * Selects the number of threads used by determinization (default: 1).
+	 * With more than one thread, the state sets found by the subset construction
+	 * are processed in parallel, see {@link BasicOperations#determinize(Automaton, int)}.
+	 * @param threads number of threads
+	 * @exception IllegalArgumentException if <code>threads</code> is less than 1
+	 */
+	static public void setDeterminizeThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("number of threads must be at least 1");
+		determinize_threads = threads;
+	}
+	
 	/**
 	 * Sets or resets minimize always flag.
 	 * If this flag is set, then {@link #minimize()} will automatically
@@ -887,6 +903,27 @@ public class Automaton implements Serializable, Cloneable {
 	public Automaton intersection(Automaton a) {
 		return BasicOperations.intersection(this, a);
 	}
+
+	/**
+	 * See {@link BasicOperations#intersects(Automaton, Automaton)}.
+	 */
+	public boolean intersects(Automaton a) {
+		return BasicOperations.intersects(this, a);
+	}
+
+	/**
+	 * See {@link BasicOperations#getSubsetCounterexample(Automaton, Automaton)}.
+	 */
+	public String getSubsetCounterexample(Automaton a) {
+		return BasicOperations.getSubsetCounterexample(this, a);
+	}
+
+	/**
+	 * See {@link BasicOperations#getEquivalenceCounterexample(Automaton, Automaton)}.
+	 */
+	public String getEquivalenceCounterexample(Automaton a) {
+		return BasicOperations.getEquivalenceCounterexample(this, a);
+	}
 	
 	/**
 	 * See {@link BasicOperations#subsetOf(Automaton, Automaton)}.
@@ -916,6 +953,13 @@ public class Automaton implements Serializable, Cloneable {
 		BasicOperations.determinize(this);
 	}
 
+	/**
+	 * See {@link BasicOperations#determinize(Automaton, DeterminizationBudget)}.
+	 */
+	public void determinize(DeterminizationBudget budget) {
+		BasicOperations.determinize(this, budget);
+	}
+
 	/** 
 	 * See {@link BasicOperations#addEpsilons(Automaton, Collection)}.
 	 */
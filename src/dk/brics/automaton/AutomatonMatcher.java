@@ -29,6 +29,9 @@
 
 package dk.brics.automaton;
 
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.regex.MatchResult;
 
 /**
@@ -42,17 +45,277 @@ import java.util.regex.MatchResult;
 public class AutomatonMatcher implements MatchResult {
 
 	AutomatonMatcher(final CharSequence chars, final RunAutomaton automaton) {
-		this.chars = chars;
+		this(chars, automaton, 0, chars.length());
+	}
+
+	AutomatonMatcher(final CharSequence chars, final RunAutomaton automaton, final int startOffset, final int endOffset) {
+		checkBounds(startOffset, endOffset, chars.length());
+		setChars(chars);
+		this.origin = startOffset;
+		this.limit = endOffset;
+		this.regionStart = startOffset;
+		this.regionEnd = endOffset;
 		this.automaton = automaton;
+		this.prefix = automaton.prefix;
+		this.prefixState = automaton.prefixstate;
+		this.startClasses = automaton.startclasses;
 	}
 
 	private final RunAutomaton automaton;
-	private final CharSequence chars;
+	private CharSequence chars;
+
+	// the input as a String or backing array, if available, for direct access
+	private String string;
+
+	private char[] array;
+
+	private int arrayOffset; // offset in array of chars.charAt(0)
+
+	// the input is chars[origin, limit), and reported offsets are relative to origin
+	private int origin;
+
+	private int limit;
+
+	// the region searched, as offsets in chars
+	private int regionStart;
+
+	private int regionEnd;
+
+	// literal prefix of all matches, used to skip to positions where a match can start
+	private final String prefix;
+
+	// state reached after reading the prefix
+	private final int prefixState;
+
+	// bitmap of the char classes that can start a match, null if any char can
+	private final long[] startClasses;
 
 	private int matchStart = -1;
 
 	private int matchEnd = -1;
 
+	private boolean linear;
+
+	private BitSet starts; // positions where a match starts in the region, computed on first find() in linear search mode
+
+	private boolean startsValid;
+
+	private BasicOperations.PairTable failed; // (position << 32) | state where runs reach no accept state after position, in linear search mode
+
+	private int failedEnd; // largest position in failed, -1 if none
+
+	private int[] path; // states of the current run after its last accept state, in linear search mode
+
+	/**
+	 * Enables or disables linear search mode.
+	 * <br>
+	 * By default, {@code find()} runs the automaton from each position until a
+	 * match is found, which takes quadratic time in the worst case (for
+	 * example, pattern {@code a*b} on a long string of {@code a}'s). In linear
+	 * search mode, the positions where matches start are first found in a
+	 * single backward scan of the input using an automaton for the reversed
+	 * pattern, so the automaton is only run forwards from positions where a
+	 * match is known to start. The forward runs record the pairs of state and
+	 * position from which no accept state is reached later, and stop when
+	 * they meet such a pair again (maximal-munch tokenization as described by
+	 * Reps), so each pair is passed at most once beyond the end of a match.
+	 * Finding all matches thus takes time and memory linear in the input
+	 * length times the number of states in the worst case, and linear in the
+	 * input length for patterns such as {@code a|a*b} where a plain search is
+	 * quadratic. The matches found are the same in both modes.
+	 * <br>
+	 * The reversed automaton is built on first use and kept by the
+	 * {@code RunAutomaton}. The backward scan is performed on the first call
+	 * to {@code find()} and uses one bit of memory per input char.
+	 *
+	 * @param linear if true, use linear search mode.
+	 */
+	public void setLinearSearch(final boolean linear) {
+		this.linear = linear;
+	}
+
+	/**
+	 * Resets this matcher.
+	 * <br>
+	 * The match state is discarded and the region is set to the entire input.
+	 *
+	 * @return this matcher.
+	 */
+	public AutomatonMatcher reset() {
+		regionStart = origin;
+		regionEnd = limit;
+		matchStart = -1;
+		matchEnd = -1;
+		startsValid = false;
+		return this;
+	}
+
+	/**
+	 * Resets this matcher with a new input.
+	 * <br>
+	 * The match state is discarded and the region is set to the entire new
+	 * input. No objects are allocated, so a matcher can be reused for many
+	 * inputs.
+	 *
+	 * @param s the new CharSequence to search.
+	 * @return this matcher.
+	 */
+	public AutomatonMatcher reset(final CharSequence s) {
+		setChars(s);
+		origin = 0;
+		limit = s.length();
+		return reset();
+	}
+
+	/**
+	 * Sets the region of the input to search.
+	 * <br>
+	 * Matches are only found within the region, as if the input consisted of
+	 * the region only, but offsets are still relative to the entire input.
+	 * The match state is discarded. The characters of the input are not
+	 * copied.
+	 *
+	 * @param start the offset where the region starts (inclusive).
+	 * @param end the offset where the region ends (exclusive).
+	 * @return this matcher.
+	 * @throws IndexOutOfBoundsException if {@code start} or {@code end} is
+	 *  negative or greater than the input length, or if {@code start} is
+	 *  greater than {@code end}.
+	 */
+	public AutomatonMatcher region(final int start, final int end) throws IndexOutOfBoundsException {
+		checkBounds(start, end, limit - origin);
+		reset();
+		regionStart = origin + start;
+		regionEnd = origin + end;
+		return this;
+	}
+
+	/**
+	 * Returns the offset where the region starts.
+	 *
+	 * @return The offset where the region starts (inclusive).
+	 */
+	public int regionStart() {
+		return regionStart - origin;
+	}
+
+	/**
+	 * Returns the offset where the region ends.
+	 *
+	 * @return The offset where the region ends (exclusive).
+	 */
+	public int regionEnd() {
+		return regionEnd - origin;
+	}
+
+	/**
+	 * Resets this matcher with a new input taken from the given array.
+	 * <br>
+	 * Offsets are relative to {@code offset}. The array is not copied.
+	 *
+	 * @param s the array holding the characters to search.
+	 * @param offset the offset of the first character to search.
+	 * @param length the number of characters to search.
+	 * @return this matcher.
+	 * @throws IndexOutOfBoundsException if {@code offset} or {@code length}
+	 *  is negative or the characters are not within the array.
+	 */
+	public AutomatonMatcher reset(final char[] s, final int offset, final int length) throws IndexOutOfBoundsException {
+		checkBounds(offset, offset + length, s.length);
+		setChars(CharBuffer.wrap(s));
+		origin = offset;
+		limit = offset + length;
+		return reset();
+	}
+
+	/** Sets the input, finding its String or backing array if available. */
+	private void setChars(final CharSequence s) {
+		chars = s;
+		string = null;
+		array = null;
+		if (s instanceof String) {
+			string = (String) s;
+		} else if (s instanceof CharBuffer) {
+			final CharBuffer b = (CharBuffer) s;
+			if (b.hasArray()) {
+				array = b.array();
+				arrayOffset = b.arrayOffset() + b.position();
+			}
+		}
+	}
+
+	/** Returns the input character at the given offset. */
+	private char charAt(final int i) {
+		if (array != null) {
+			return array[arrayOffset + i];
+		} else if (string != null) {
+			return string.charAt(i);
+		} else {
+			return chars.charAt(i);
+		}
+	}
+
+	/**
+	 * Runs the automaton from state {@code p} on the input from {@code from} to {@code l}.
+	 * Returns the offset after the longest run that ends in an accept state, or -1 if none.
+	 * The run stops early if a dead state or an accepting sink is entered.
+	 * There is a separate loop for each kind of input, so that each loop accesses the input in only one way.
+	 */
+	private int longest(int p, final int from, final int l) {
+		final RunAutomaton a = automaton;
+		final byte[] sinks = a.sinks;
+		int end = -1;
+		if (array != null) {
+			final char[] s = array;
+			final int d = arrayOffset;
+			for (int i = from; i < l; i++) {
+				p = a.step(p, s[d + i]);
+				if (p == -1 || sinks[p] == RunAutomaton.SINK_REJECT) {
+					break;
+				} else if (a.isAccept(p)) {
+					end = i + 1;
+					if (sinks[p] == RunAutomaton.SINK_ACCEPT) {
+						return l;
+					}
+				}
+			}
+		} else if (string != null) {
+			final String s = string;
+			for (int i = from; i < l; i++) {
+				p = a.step(p, s.charAt(i));
+				if (p == -1 || sinks[p] == RunAutomaton.SINK_REJECT) {
+					break;
+				} else if (a.isAccept(p)) {
+					end = i + 1;
+					if (sinks[p] == RunAutomaton.SINK_ACCEPT) {
+						return l;
+					}
+				}
+			}
+		} else {
+			final CharSequence s = chars;
+			for (int i = from; i < l; i++) {
+				p = a.step(p, s.charAt(i));
+				if (p == -1 || sinks[p] == RunAutomaton.SINK_REJECT) {
+					break;
+				} else if (a.isAccept(p)) {
+					end = i + 1;
+					if (sinks[p] == RunAutomaton.SINK_ACCEPT) {
+						return l;
+					}
+				}
+			}
+		}
+		return end;
+	}
+
+	/** Helper method that checks region bounds. */
+	private static void checkBounds(final int start, final int end, final int length) throws IndexOutOfBoundsException {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Invalid region: " + start + ", " + end + " (length " + length + ")");
+		}
+	}
+
 	/**
 	 * Find the next matching subsequence of the input.
 	 * <br>
@@ -67,20 +330,23 @@ public class AutomatonMatcher implements MatchResult {
 			case -2:
 			return false;
 			case -1:
-			begin = 0;
+			begin = regionStart;
 				break;
 			default:
 			begin = getMatchEnd();
 				// This occurs when a previous find() call matched the empty string. This can happen when the pattern is a* for example.
 				if(begin == getMatchStart()) {
 					begin += 1;
-					if(begin > getChars().length()) {
+					if(begin > regionEnd) {
 						setMatch(-2, -2);
 						return false;
 					}
 				}
 		}
 
+		if (linear) {
+			return findLinear(begin);
+		}
 		int match_start;
 		int match_end;
 		if (automaton.isAccept(automaton.getInitialState())) {
@@ -90,19 +356,35 @@ public class AutomatonMatcher implements MatchResult {
 			match_start = -1;
 			match_end = -1;
 		}
-		int l = getChars().length();
+		int l = regionEnd;
 		while (begin < l) {
 			int p = automaton.getInitialState();
-			for (int i = begin; i < l; i++) {
-				final int new_state = automaton.step(p, getChars().charAt(i));
-				if (new_state == -1) {
-				    break;
-				} else if (automaton.isAccept(new_state)) {
-				    // found a match from begin to (i+1)
-				    match_start = begin;
-				    match_end=(i+1);
+			int i = begin;
+			if (prefix.length() > 0) {
+				begin = indexOfPrefix(begin, l);
+				if (begin == -1) {
+					break;
+				}
+				p = prefixState;
+				i = begin + prefix.length();
+				if (automaton.isAccept(p)) {
+					match_start = begin;
+					match_end = i;
+				}
+			} else if (startClasses != null) {
+				while (begin < l && !canStart(charAt(begin))) {
+					begin++;
 				}
-				p = new_state;
+				if (begin == l) {
+					break;
+				}
+				i = begin;
+			}
+			final int end = longest(p, i, l);
+			if (end != -1) {
+				// found a match from begin to end
+				match_start = begin;
+				match_end = end;
 			}
 			if (match_start != -1) {
 				setMatch(match_start, match_end);
@@ -119,6 +401,120 @@ public class AutomatonMatcher implements MatchResult {
 		}
 	}
 
+	/** Returns true if a match can start with the given char. */
+	private boolean canStart(final char c) {
+		final int k = automaton.getCharClass(c);
+		return (startClasses[k >>> 6] & (1L << (k & 63))) != 0;
+	}
+
+	/** Returns the first position at or after {@code from} where the prefix occurs, or -1 if none. */
+	private int indexOfPrefix(final int from, final int l) {
+		final int m = prefix.length();
+		if (string != null) {
+			final int i = string.indexOf(prefix, from);
+			return i > l - m ? -1 : i;
+		}
+		final char first = prefix.charAt(0);
+		for (int i = from; i <= l - m; i++) {
+			if (charAt(i) == first) {
+				int j = 1;
+				while (j < m && charAt(i + j) == prefix.charAt(j)) {
+					j++;
+				}
+				if (j == m) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/** Finds the next match starting at or after {@code begin} using the precomputed match starts. */
+	private boolean findLinear(final int begin) {
+		if (!startsValid) {
+			findStarts();
+		}
+		final int match_start = starts.nextSetBit(begin);
+		if (match_start == -1) {
+			setMatch(-2, -2);
+			return false;
+		}
+		final int end = longestLinear(automaton.getInitialState(), match_start, regionEnd);
+		setMatch(match_start, end == -1 ? match_start : end);
+		return true;
+	}
+
+	/**
+	 * Same as {@link #longest(int, int, int)}, except that the run stops at pairs of
+	 * state and position in {@code failed}, and the pairs passed after the last
+	 * accept state are added to {@code failed}.
+	 */
+	private int longestLinear(int p, final int from, final int l) {
+		final RunAutomaton a = automaton;
+		final byte[] sinks = a.sinks;
+		int end = -1;
+		int n = 0; // number of states in path, for the positions from (end == -1 ? from : end)
+		for (int i = from; ; i++) {
+			if (i <= failedEnd && failed.contains(((long)i << 32) | p)) {
+				break;
+			}
+			if (n == path.length) {
+				path = Arrays.copyOf(path, n * 2);
+			}
+			path[n++] = p;
+			if (i == l) {
+				break;
+			}
+			p = a.step(p, charAt(i));
+			if (p == -1 || sinks[p] == RunAutomaton.SINK_REJECT) {
+				break;
+			} else if (a.isAccept(p)) {
+				end = i + 1;
+				n = 0;
+				if (sinks[p] == RunAutomaton.SINK_ACCEPT) {
+					return l;
+				}
+			}
+		}
+		final int start = end == -1 ? from : end;
+		for (int j = 0; j < n; j++) {
+			failed.intern(((long)(start + j) << 32) | path[j]);
+		}
+		if (start + n - 1 > failedEnd) {
+			failedEnd = start + n - 1;
+		}
+		return end;
+	}
+
+	/** Finds the set of positions in the region where a match starts, in one backward scan of the input. */
+	private void findStarts() {
+		final RunAutomaton reverse = automaton.getStartAutomaton();
+		final int l = regionEnd;
+		if (starts == null) {
+			starts = new BitSet(l + 1);
+		} else {
+			starts.clear();
+		}
+		final BitSet result = starts;
+		failed = new BasicOperations.PairTable();
+		failedEnd = -1;
+		if (path == null) {
+			path = new int[16];
+		}
+		int p = reverse.getInitialState();
+		if (reverse.isAccept(p)) {
+			result.set(l);
+		}
+		for (int i = l - 1; i >= regionStart; i--) {
+			// the automaton accepts any prefix, so it never enters the dead state
+			p = reverse.step(p, charAt(i));
+			if (reverse.isAccept(p)) {
+				result.set(i);
+			}
+		}
+		startsValid = true;
+	}
+
 	private void setMatch(final int matchStart, final int matchEnd) throws IllegalArgumentException {
 		if (matchStart > matchEnd) {
 			throw new IllegalArgumentException("Start must be less than or equal to end: " + matchStart + ", " + matchEnd);
@@ -135,10 +531,6 @@ public class AutomatonMatcher implements MatchResult {
 		return matchEnd;
 	}
 
-	private CharSequence getChars() {
-		return chars;
-	}
-
 	/**
 	 * Returns the offset after the last character matched.
 	 *
@@ -148,7 +540,7 @@ public class AutomatonMatcher implements MatchResult {
 	 */
 	public int end() throws IllegalStateException {
 		matchGood();
-		return matchEnd;
+		return matchEnd - origin;
 	}
 
 	/**
@@ -225,7 +617,7 @@ public class AutomatonMatcher implements MatchResult {
 	 */
 	public int start() throws IllegalStateException {
 		matchGood();
-		return matchStart;
+		return matchStart - origin;
 	}
 
 	/**
@@ -248,6 +640,46 @@ public class AutomatonMatcher implements MatchResult {
 		return start();
 	}
 
+	/**
+	 * Reports all remaining matches to the given listener.
+	 * <br>
+	 * This is equivalent to calling {@code find()} until it returns
+	 * {@code false} and reporting {@code start()} and {@code end()} after each
+	 * call, but no objects are allocated per match.
+	 *
+	 * @param listener the receiver of the matches.
+	 */
+	public void forEach(final MatchListener listener) {
+		while (find()) {
+			listener.match(matchStart - origin, matchEnd - origin);
+		}
+	}
+
+	/**
+	 * Finds the next matches and stores their offsets in the given arrays.
+	 * <br>
+	 * This is equivalent to calling {@code find()} up to
+	 * {@code starts.length} times (or {@code ends.length}, if smaller) and
+	 * storing {@code start()} and {@code end()} after each successful call,
+	 * but no objects are allocated. The remaining matches can be found by
+	 * calling this method again.
+	 *
+	 * @param starts the array to store the offsets of the first character matched.
+	 * @param ends the array to store the offsets after the last character matched.
+	 * @return The number of matches found, which is less than the length of
+	 *  the arrays only if there are no more matches.
+	 */
+	public int findAll(final int[] starts, final int[] ends) {
+		final int n = Math.min(starts.length, ends.length);
+		int count = 0;
+		while (count < n && find()) {
+			starts[count] = matchStart - origin;
+			ends[count] = matchEnd - origin;
+			count++;
+		}
+		return count;
+	}
+
 	/**
 	 * Returns the current state of this {@code AutomatonMatcher} as a
 	 * {@code MatchResult}.
@@ -257,7 +689,7 @@ public class AutomatonMatcher implements MatchResult {
 	 *  {@code AutomatonMatcher}.
 	 */
 	public MatchResult toMatchResult() {
-		final AutomatonMatcher match = new AutomatonMatcher(chars, automaton);
+		final AutomatonMatcher match = new AutomatonMatcher(chars, automaton, origin, limit);
 		match.matchStart = this.matchStart;
 		match.matchEnd = this.matchEnd;
 		return match;
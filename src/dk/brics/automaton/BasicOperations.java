@@ -30,14 +30,21 @@
 package dk.brics.automaton;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Basic automata operations.
@@ -293,43 +300,138 @@ final public class BasicOperations {
 		}
 		if (a1 == a2)
 			return a1.cloneIfRequired();
-		Transition[][] transitions1 = Automaton.getSortedTransitions(a1.getStates());
-		Transition[][] transitions2 = Automaton.getSortedTransitions(a2.getStates());
-		Automaton c = new Automaton();
-		LinkedList<StatePair> worklist = new LinkedList<StatePair>();
-		HashMap<StatePair, StatePair> newstates = new HashMap<StatePair, StatePair>();
-		StatePair p = new StatePair(c.initial, a1.initial, a2.initial);
-		worklist.add(p);
-		newstates.put(p, p);
-		while (worklist.size() > 0) {
-			p = worklist.removeFirst();
-			p.s.accept = p.s1.accept && p.s2.accept;
-			Transition[] t1 = transitions1[p.s1.number];
-			Transition[] t2 = transitions2[p.s2.number];
-			for (int n1 = 0, b2 = 0; n1 < t1.length; n1++) {
-				while (b2 < t2.length && t2[b2].max < t1[n1].min)
+		NumberedAutomaton n1 = new NumberedAutomaton(a1);
+		NumberedAutomaton n2 = new NumberedAutomaton(a2);
+		int size2 = n2.accept.length;
+		// explore the reachable pairs, collecting the transitions of each pair consecutively
+		PairTable pairs = new PairTable();
+		pairs.intern((long)n1.initial * size2 + n2.initial);
+		int[] first = new int[17]; // index of the first transition of each pair
+		int[] to = new int[16];
+		char[] min = new char[16], max = new char[16];
+		int nt = 0;
+		for (int id = 0; id < pairs.size; id++) {
+			if (id + 1 == first.length)
+				first = Arrays.copyOf(first, first.length * 2);
+			first[id] = nt;
+			int s1 = (int)(pairs.keys[id] / size2);
+			int s2 = (int)(pairs.keys[id] % size2);
+			char[] min1 = n1.min[s1], max1 = n1.max[s1], min2 = n2.min[s2], max2 = n2.max[s2];
+			int[] to1 = n1.to[s1], to2 = n2.to[s2];
+			for (int i1 = 0, b2 = 0; i1 < min1.length; i1++) {
+				while (b2 < min2.length && max2[b2] < min1[i1])
 					b2++;
-				for (int n2 = b2; n2 < t2.length && t1[n1].max >= t2[n2].min; n2++) 
-					if (t2[n2].max >= t1[n1].min) {
-						StatePair q = new StatePair(t1[n1].to, t2[n2].to);
-						StatePair r = newstates.get(q);
-						if (r == null) {
-							q.s = new State();
-							worklist.add(q);
-							newstates.put(q, q);
-							r = q;
+				for (int i2 = b2; i2 < min2.length && max1[i1] >= min2[i2]; i2++) 
+					if (max2[i2] >= min1[i1]) {
+						int r = pairs.intern((long)to1[i1] * size2 + to2[i2]);
+						char lo = min1[i1] > min2[i2] ? min1[i1] : min2[i2];
+						char hi = max1[i1] < max2[i2] ? max1[i1] : max2[i2];
+						if (nt > first[id] && to[nt - 1] == r && max[nt - 1] + 1 == lo)
+							max[nt - 1] = hi;
+						else {
+							if (nt == to.length) {
+								to = Arrays.copyOf(to, nt * 2);
+								min = Arrays.copyOf(min, nt * 2);
+								max = Arrays.copyOf(max, nt * 2);
+							}
+							to[nt] = r;
+							min[nt] = lo;
+							max[nt] = hi;
+							nt++;
 						}
-						char min = t1[n1].min > t2[n2].min ? t1[n1].min : t2[n2].min;
-						char max = t1[n1].max < t2[n2].max ? t1[n1].max : t2[n2].max;
-						p.s.transitions.add(new Transition(min, max, r.s));
 					}
 			}
 		}
+		int size = pairs.size;
+		first[size] = nt;
+		// find the live pairs, backwards from the accepting pairs
+		int[] rfirst = new int[size + 1];
+		for (int t = 0; t < nt; t++)
+			rfirst[to[t] + 1]++;
+		for (int id = 0; id < size; id++)
+			rfirst[id + 1] += rfirst[id];
+		int[] from = new int[nt];
+		int[] fill = Arrays.copyOf(rfirst, size);
+		for (int id = 0; id < size; id++)
+			for (int t = first[id]; t < first[id + 1]; t++)
+				from[fill[to[t]]++] = id;
+		boolean[] accept = new boolean[size];
+		boolean[] live = new boolean[size];
+		int[] worklist = new int[size];
+		int nw = 0;
+		for (int id = 0; id < size; id++)
+			if (n1.accept[(int)(pairs.keys[id] / size2)] && n2.accept[(int)(pairs.keys[id] % size2)]) {
+				accept[id] = live[id] = true;
+				worklist[nw++] = id;
+			}
+		while (nw > 0) {
+			int q = worklist[--nw];
+			for (int t = rfirst[q]; t < rfirst[q + 1]; t++)
+				if (!live[from[t]]) {
+					live[from[t]] = true;
+					worklist[nw++] = from[t];
+				}
+		}
+		// create the states and transitions of the live pairs
+		Automaton c = new Automaton();
+		State[] states = new State[size];
+		for (int id = 0; id < size; id++)
+			if (live[id]) {
+				states[id] = id == 0 ? c.initial : new State();
+				states[id].accept = accept[id];
+			}
+		for (int id = 0; id < size; id++)
+			if (live[id])
+				for (int t = first[id]; t < first[id + 1]; t++)
+					if (live[to[t]])
+						states[id].transitions.add(new Transition(min[t], max[t], states[to[t]]));
 		c.deterministic = a1.deterministic && a2.deterministic;
-		c.removeDeadTransitions();
+		if (c.deterministic)
+			c.clearHashCode();
+		else
+			c.reduce();
 		c.checkMinimizeAlways();
 		return c;
 	}
+
+	/**
+	 * Returns true if the languages of the given automata have a string in common.
+	 * The pairs of states reachable in the product automaton are explored until an 
+	 * accepting pair is found, without constructing the intersection.
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: quadratic in number of states.
+	 */
+	public static boolean intersects(Automaton a1, Automaton a2) {
+		if (a1.isSingleton())
+			return a2.run(a1.singleton);
+		if (a2.isSingleton())
+			return a1.run(a2.singleton);
+		NumberedAutomaton n1 = new NumberedAutomaton(a1);
+		NumberedAutomaton n2 = a1 == a2 ? n1 : new NumberedAutomaton(a2);
+		int size2 = n2.accept.length;
+		if (n1.accept[n1.initial] && n2.accept[n2.initial])
+			return true;
+		PairTable pairs = new PairTable();
+		pairs.intern((long)n1.initial * size2 + n2.initial);
+		for (int id = 0; id < pairs.size; id++) {
+			int s1 = (int)(pairs.keys[id] / size2);
+			int s2 = (int)(pairs.keys[id] % size2);
+			char[] min1 = n1.min[s1], max1 = n1.max[s1], min2 = n2.min[s2], max2 = n2.max[s2];
+			int[] to1 = n1.to[s1], to2 = n2.to[s2];
+			for (int i1 = 0, b2 = 0; i1 < min1.length; i1++) {
+				while (b2 < min2.length && max2[b2] < min1[i1])
+					b2++;
+				for (int i2 = b2; i2 < min2.length && max1[i1] >= min2[i2]; i2++) 
+					if (max2[i2] >= min1[i1]) {
+						int n = pairs.size;
+						if (pairs.intern((long)to1[i1] * size2 + to2[i2]) == n && n1.accept[to1[i1]] && n2.accept[to2[i2]])
+							return true;
+					}
+			}
+		}
+		return false;
+	}
 		
 	/**
 	 * Returns true if the language of <code>a1</code> is a subset of the
@@ -387,6 +489,387 @@ final public class BasicOperations {
 		return true;
 	}
 	
+	/**
+	 * Returns a string that is accepted by <code>a1</code> but not by <code>a2</code>,
+	 * or null if the language of <code>a1</code> is a subset of the language of <code>a2</code>.
+	 * Unlike {@link #subsetOf(Automaton, Automaton)}, this method does not determinize
+	 * <code>a2</code>. It explores pairs of a state of <code>a1</code> and a set of 
+	 * states of <code>a2</code> reachable by the same string, in breadth-first order, 
+	 * and skips a pair if a pair with the same state and a subset of its set has 
+	 * already been found (an antichain).
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: exponential in number of states of <code>a2</code> in the worst case.
+	 */
+	public static String getSubsetCounterexample(Automaton a1, Automaton a2) {
+		if (a1 == a2)
+			return null;
+		if (a1.isSingleton())
+			return a2.run(a1.singleton) ? null : a1.singleton;
+		if (a2.isSingleton())
+			a2 = a2.cloneExpanded();
+		return new InclusionCheck(a1, a2).run();
+	}
+
+	/**
+	 * Returns a string that is accepted by one of the given automata but not by the other,
+	 * or null if they accept the same language. 
+	 * Inclusion is checked in both directions as in {@link #getSubsetCounterexample(Automaton, Automaton)},
+	 * without determinizing the automata.
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: exponential in number of states in the worst case.
+	 */
+	public static String getEquivalenceCounterexample(Automaton a1, Automaton a2) {
+		String s = getSubsetCounterexample(a1, a2);
+		if (s == null)
+			s = getSubsetCounterexample(a2, a1);
+		return s;
+	}
+
+	/**
+	 * Inclusion check with antichains. A node is a state of the first automaton and a
+	 * set of states of the second automaton, reachable by the same string.
+	 * Nodes are also pruned using a simulation relation between the states of the 
+	 * two automata, which is computed once the search has done work proportional to
+	 * the number of pairs of states, if the automata are not too large.
+	 */
+	static class InclusionCheck {
+
+		/** Maximum number of pairs of states for which the simulation relation is computed. */
+		static final int SIMULATION_MAX_PAIRS = 1 << 20;
+
+		/** The simulation relation is computed when the number of pairs of states is at most this times the sum of the set sizes of the nodes expanded. */
+		static final int SIMULATION_MAX_RATIO = 16;
+
+		final NumberedAutomaton n1, n2;
+		final SetTable sets = new SetTable(); // sets of states of the second automaton
+		final PairTable pairs = new PairTable(); // pairs of state and set number found, as (set << 32) | state
+		final int[][] antichain; // minimal set numbers of the nodes, by state of the first automaton
+		final int[] antichainsizes;
+		long[] signatures = new long[16]; // bit (q mod 64) for each state q, by set number
+		boolean[] simulates; // [p * n2 + q] if q simulates p, null if not computed
+		final long simulationpairs; // number of pairs of states, 0 if the simulation relation is not to be computed
+		long work; // sum of the set sizes of the nodes expanded
+
+		// nodes, numbered in breadth-first order
+		int[] states = new int[16];
+		int[] nodesets = new int[16];
+		int[] parents = new int[16];
+		char[] chars = new char[16];
+		int size;
+
+		// partitions of the chars into intervals by successor set, by set number
+		char[][] starts = new char[16][];
+		int[][] successors = new int[16][];
+
+		// scratch space for partitioning
+		final int[] counts, active, pos, sorted;
+		long[] events = new long[16];
+		char[] partstarts = new char[16];
+		int[] partsets = new int[16];
+
+		InclusionCheck(Automaton a1, Automaton a2) {
+			n1 = new NumberedAutomaton(a1);
+			n2 = new NumberedAutomaton(a2);
+			antichain = new int[n1.accept.length][];
+			antichainsizes = new int[n1.accept.length];
+			int n = n2.accept.length;
+			long m = (long)n1.accept.length * n;
+			simulationpairs = m <= SIMULATION_MAX_PAIRS ? m : 0;
+			counts = new int[n];
+			active = new int[n];
+			pos = new int[n];
+			sorted = new int[n];
+		}
+
+		/**
+		 * Returns a string accepted by the first automaton but not the second, null if none.
+		 */
+		String run() {
+			int init = sets.intern(new int[] {n2.initial}, 1);
+			if (n1.accept[n1.initial] && !n2.accept[n2.initial])
+				return "";
+			pairs.intern(((long)init << 32) | n1.initial);
+			if (!subsumed(n1.initial, init))
+				add(n1.initial, init, -1, (char)0);
+			for (int id = 0; id < size; id++) {
+				int p = states[id];
+				char[] min = n1.min[p], max = n1.max[p];
+				int[] to = n1.to[p];
+				if (min.length == 0)
+					continue;
+				int set = nodesets[id];
+				work += sets.sets[set].length;
+				if (simulationpairs > 0 && simulates == null && simulationpairs <= work * SIMULATION_MAX_RATIO)
+					simulates = simulation();
+				if (set >= starts.length || starts[set] == null)
+					partition(set);
+				char[] st = starts[set];
+				int[] su = successors[set];
+				for (int j = 0, k = 0; j < min.length; j++) {
+					while (k + 1 < st.length && st[k + 1] <= min[j])
+						k++;
+					for (int i = k; i < st.length && st[i] <= max[j]; i++) {
+						int n = pairs.size;
+						if (pairs.intern(((long)su[i] << 32) | to[j]) != n)
+							continue;
+						char c = st[i] > min[j] ? st[i] : min[j];
+						if (n1.accept[to[j]] && !accepts(sets.sets[su[i]]))
+							return example(id, c);
+						if (!subsumed(to[j], su[i]))
+							add(to[j], su[i], id, c);
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Partitions the chars into intervals by successor set of the given set of 
+		 * states of the second automaton. 
+		 */
+		void partition(int set) {
+			int ne = 0;
+			for (int q : sets.sets[set]) {
+				char[] min = n2.min[q], max = n2.max[q];
+				if (ne + 2 * min.length > events.length)
+					events = Arrays.copyOf(events, Math.max(events.length * 2, ne + 2 * min.length));
+				for (int j = 0; j < min.length; j++) {
+					events[ne++] = ((long)min[j] << 32) | n2.to[q][j];
+					if (max[j] < Character.MAX_VALUE)
+						events[ne++] = ((long)(max[j] + 1) << 32) | (1L << 31) | n2.to[q][j];
+				}
+			}
+			Arrays.sort(events, 0, ne);
+			int nactive = 0;
+			int parts = 0;
+			int start = 0; // first char of the current interval
+			int current = sets.intern(active, 0);
+			for (int e = 0; e < ne;) {
+				int c = (int)(events[e] >>> 32);
+				for (; e < ne && (int)(events[e] >>> 32) == c; e++) {
+					int q = (int)(events[e] & 0x7fffffff);
+					if ((events[e] & (1L << 31)) == 0) {
+						if (counts[q]++ == 0) {
+							pos[q] = nactive;
+							active[nactive++] = q;
+						}
+					} else if (--counts[q] == 0) {
+						int last = active[--nactive];
+						active[pos[q]] = last;
+						pos[last] = pos[q];
+					}
+				}
+				System.arraycopy(active, 0, sorted, 0, nactive);
+				Arrays.sort(sorted, 0, nactive);
+				int n = sets.intern(sorted, nactive);
+				if (n != current) {
+					if (c > start) {
+						if (parts == partstarts.length) {
+							partstarts = Arrays.copyOf(partstarts, parts * 2);
+							partsets = Arrays.copyOf(partsets, parts * 2);
+						}
+						partstarts[parts] = (char)start;
+						partsets[parts++] = current;
+					}
+					start = c;
+					current = n;
+				}
+			}
+			for (int j = 0; j < nactive; j++)
+				counts[active[j]] = 0;
+			if (set >= starts.length) {
+				starts = Arrays.copyOf(starts, Math.max(starts.length * 2, set + 1));
+				successors = Arrays.copyOf(successors, starts.length);
+			}
+			starts[set] = Arrays.copyOf(partstarts, parts + 1);
+			starts[set][parts] = (char)start;
+			successors[set] = Arrays.copyOf(partsets, parts + 1);
+			successors[set][parts] = current;
+		}
+
+		boolean accepts(int[] set) {
+			for (int q : set)
+				if (n2.accept[q])
+					return true;
+			return false;
+		}
+
+		/**
+		 * Returns true if the given set has a state that simulates the given state, or
+		 * a node with the given state and a subset of the given set has been found. 
+		 * Otherwise, removes the sets that are supersets of the given set from the 
+		 * antichain of the state.
+		 */
+		boolean subsumed(int p, int set) {
+			int[] q = sets.sets[set];
+			if (simulates != null)
+				for (int r : q)
+					if (simulates[p * n2.accept.length + r])
+						return true;
+			int[] l = antichain[p];
+			int n = antichainsizes[p];
+			long sig = signature(set);
+			for (int i = 0; i < n; i++)
+				if ((signatures[l[i]] & ~sig) == 0 && isSubset(sets.sets[l[i]], q))
+					return true;
+			int k = 0;
+			for (int i = 0; i < n; i++)
+				if ((sig & ~signatures[l[i]]) != 0 || !isSubset(q, sets.sets[l[i]]))
+					l[k++] = l[i];
+			antichainsizes[p] = k;
+			return false;
+		}
+
+		long signature(int set) {
+			if (set >= signatures.length)
+				signatures = Arrays.copyOf(signatures, Math.max(signatures.length * 2, set + 1));
+			if (signatures[set] == 0)
+				for (int q : sets.sets[set])
+					signatures[set] |= 1L << q;
+			return signatures[set];
+		}
+
+		private static boolean isSubset(int[] a, int[] b) {
+			if (a.length > b.length)
+				return false;
+			for (int i = 0, j = 0; i < a.length; i++, j++) {
+				while (j < b.length && b[j] < a[i])
+					j++;
+				if (j == b.length || b[j] != a[i])
+					return false;
+			}
+			return true;
+		}
+
+		void add(int p, int set, int parent, char c) {
+			if (size == states.length) {
+				states = Arrays.copyOf(states, size * 2);
+				nodesets = Arrays.copyOf(nodesets, size * 2);
+				parents = Arrays.copyOf(parents, size * 2);
+				chars = Arrays.copyOf(chars, size * 2);
+			}
+			states[size] = p;
+			nodesets[size] = set;
+			parents[size] = parent;
+			chars[size++] = c;
+			if (antichain[p] == null)
+				antichain[p] = new int[4];
+			else if (antichainsizes[p] == antichain[p].length)
+				antichain[p] = Arrays.copyOf(antichain[p], antichainsizes[p] * 2);
+			antichain[p][antichainsizes[p]++] = set;
+		}
+
+		/**
+		 * Computes the greatest relation where q simulates p if q is accepting when p is, 
+		 * and every transition of p is covered by transitions of q to states that 
+		 * simulate its destination.
+		 * When a pair is removed, only the pairs of predecessors are checked again.
+		 */
+		boolean[] simulation() {
+			int m = n1.accept.length, n = n2.accept.length;
+			int[] first1 = new int[m + 1];
+			int[] pred1 = predecessors(n1, first1);
+			int[] first2 = new int[n + 1];
+			int[] pred2 = predecessors(n2, first2);
+			boolean[] r = new boolean[m * n];
+			boolean[] queued = new boolean[m * n];
+			int[] worklist = new int[m * n]; // pairs to check, as p * n + q, each queued at most once
+			int w = 0;
+			for (int i = 0; i < m * n; i++) {
+				r[i] = !n1.accept[i / n] || n2.accept[i % n];
+				if (r[i]) {
+					worklist[w++] = i;
+					queued[i] = true;
+				}
+			}
+			for (int i = 0; i < m * n; i++)
+				if (!r[i])
+					w = requeue(r, queued, worklist, w, i, first1, pred1, first2, pred2);
+			while (w > 0) {
+				int i = worklist[--w];
+				queued[i] = false;
+				if (!covers(r, i / n, i % n)) {
+					r[i] = false;
+					w = requeue(r, queued, worklist, w, i, first1, pred1, first2, pred2);
+				}
+			}
+			return r;
+		}
+
+		/**
+		 * Adds the pairs of predecessors of the given removed pair that are in the 
+		 * relation and not already in the worklist. Returns the new worklist size.
+		 */
+		private int requeue(boolean[] r, boolean[] queued, int[] worklist, int w, int i, 
+				int[] first1, int[] pred1, int[] first2, int[] pred2) {
+			int n = n2.accept.length;
+			int p = i / n, q = i % n;
+			for (int j = first1[p]; j < first1[p + 1]; j++)
+				for (int k = first2[q]; k < first2[q + 1]; k++) {
+					int ii = pred1[j] * n + pred2[k];
+					if (r[ii] && !queued[ii]) {
+						queued[ii] = true;
+						worklist[w++] = ii;
+					}
+				}
+			return w;
+		}
+
+		/**
+		 * Returns the sources of the transitions of the given automaton, by destination
+		 * from <code>first[q]</code> to <code>first[q + 1]</code>.
+		 */
+		private static int[] predecessors(NumberedAutomaton a, int[] first) {
+			int n = a.accept.length;
+			for (int p = 0; p < n; p++)
+				for (int q : a.to[p])
+					first[q + 1]++;
+			for (int q = 0; q < n; q++)
+				first[q + 1] += first[q];
+			int[] pred = new int[first[n]];
+			int[] next = Arrays.copyOf(first, n);
+			for (int p = 0; p < n; p++)
+				for (int q : a.to[p])
+					pred[next[q]++] = p;
+			return pred;
+		}
+
+		/**
+		 * Returns true if every transition of p is covered by transitions of q to 
+		 * states that simulate its destination according to r.
+		 */
+		private boolean covers(boolean[] r, int p, int q) {
+			int n = n2.accept.length;
+			char[] min2 = n2.min[q], max2 = n2.max[q];
+			int[] to2 = n2.to[q];
+			for (int j = 0; j < n1.min[p].length; j++) {
+				int c = n1.min[p][j], hi = n1.max[p][j], to = n1.to[p][j];
+				for (int k = 0; k < min2.length && min2[k] <= c && c <= hi; k++)
+					if (max2[k] >= c && r[to * n + to2[k]])
+						c = max2[k] + 1;
+				if (c <= hi)
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the string leading to the given node, followed by the given char.
+		 */
+		String example(int id, char c) {
+			int length = 1;
+			for (int i = id; parents[i] >= 0; i = parents[i])
+				length++;
+			char[] s = new char[length];
+			s[--length] = c;
+			for (; parents[id] >= 0; id = parents[id])
+				s[--length] = chars[id];
+			return new String(s);
+		}
+	}
+
 	/**
 	 * Returns an automaton that accepts the union of the languages of the given automata.
 	 * <p>
@@ -438,6 +921,7 @@ final public class BasicOperations {
 
 	/**
 	 * Determinizes the given automaton.
+	 * The number of threads used is selected by {@link Automaton#setDeterminizeThreads(int)}.
 	 * <p>
 	 * Complexity: exponential in number of states.
 	 */
@@ -449,50 +933,603 @@ final public class BasicOperations {
 		determinize(a, initialset);
 	}
 
+	/**
+	 * Determinizes the given automaton using the given number of threads.
+	 * With more than one thread, the subset construction proceeds in breadth-first 
+	 * levels, and the state sets of each level are processed in parallel. The result 
+	 * is the same as with one thread, except for the identity of the states.
+	 * <p>
+	 * Complexity: exponential in number of states.
+	 * @param threads number of threads
+	 * @exception IllegalArgumentException if <code>threads</code> is less than 1
+	 */
+	public static void determinize(Automaton a, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("number of threads must be at least 1");
+		if (a.deterministic || a.isSingleton())
+			return;
+		Set<State> initialset = new HashSet<State>();
+		initialset.add(a.initial);
+		determinize(a, initialset, threads);
+	}
+
+	/**
+	 * Determinizes the given automaton within the given budget.
+	 * The number of threads used is selected by {@link Automaton#setDeterminizeThreads(int)}.
+	 * If a limit of the budget is exceeded, the automaton is left unchanged.
+	 * <p>
+	 * Complexity: exponential in number of states, bounded by the budget.
+	 * @exception DeterminizationLimitException if a limit of the budget is exceeded
+	 */
+	public static void determinize(Automaton a, DeterminizationBudget budget) {
+		if (a.deterministic || a.isSingleton())
+			return;
+		Set<State> initialset = new HashSet<State>();
+		initialset.add(a.initial);
+		determinize(a, initialset, Automaton.determinize_threads, budget);
+	}
+
 	/** 
 	 * Determinizes the given automaton using the given set of initial states. 
 	 */
 	static void determinize(Automaton a, Set<State> initialset) {
-		char[] points = a.getStartPoints();
-		// subset construction
-		LinkedList<Set<State>> worklist = new LinkedList<Set<State>>();
-		Map<Set<State>, State> newstate = new HashMap<Set<State>, State>();
-		worklist.add(initialset);
-		a.initial = new State();
-		newstate.put(initialset, a.initial);
-		while (worklist.size() > 0) {
-			Set<State> s = worklist.removeFirst();
-			State r = newstate.get(s);
-			for (State q : s)
-				if (q.accept) {
-					r.accept = true;
+		determinize(a, initialset, Automaton.determinize_threads);
+	}
+
+	/** 
+	 * Determinizes the given automaton using the given set of initial states and number of threads. 
+	 */
+	static void determinize(Automaton a, Set<State> initialset, int threads) {
+		determinize(a, initialset, threads, null);
+	}
+
+	/** 
+	 * Determinizes the given automaton using the given set of initial states, number of threads,
+	 * and budget (null for no limits).
+	 */
+	static void determinize(Automaton a, Set<State> initialset, int threads, DeterminizationBudget budget) {
+		SubsetConstruction c = new SubsetConstruction(a, initialset, budget);
+		if (threads > 1)
+			c.run(threads);
+		else
+			c.run();
+	}
+
+	/**
+	 * Subset construction on numbered states, where sets of states are represented
+	 * as sorted arrays of state numbers.
+	 * <p>
+	 * The sequential construction finds the successors of a state set for all chars
+	 * in one sweep over the sorted start and end points of the transitions of its 
+	 * states, and looks up state sets in an open addressing hash table.
+	 * The parallel construction starts out sequentially, and once more than 
+	 * {@link #PARALLEL_MIN_FRONTIER} state sets are waiting, it processes the state sets 
+	 * of each breadth-first level in parallel in a pool shared by all determinizations.
+	 * <p>
+	 * The budget, if any, is checked for each state set, except that the parallel
+	 * construction counts transitions once per level. The automaton is only
+	 * modified when the construction has completed.
+	 */
+	static class SubsetConstruction {
+
+		/** Maximum number of state sets processed by one task without splitting. */
+		static final int TASK_SIZE = 16;
+
+		/** Number of waiting state sets above which the parallel construction stops running sequentially. */
+		static final int PARALLEL_MIN_FRONTIER = 256;
+
+		/** Pool used by the parallel construction, created when first needed. */
+		static ForkJoinPool pool;
+
+		final Automaton a;
+		final char[] points;
+		final char[][] mins; // transitions of the original automaton, by state
+		final char[][] maxs;
+		final int[][] tos;
+		final boolean[] accept;
+		final int[] initialset;
+		final ConcurrentHashMap<SubsetState, SubsetState> sets = new ConcurrentHashMap<SubsetState, SubsetState>();
+		final DeterminizationBudget budget; // null for no limits
+		final long started;
+		int transitions; // number of transitions created
+
+		// sequential construction
+		SetTable subsets; // state sets, by new state number
+		State[] states; // new states
+
+		SubsetConstruction(Automaton a, Set<State> initialset, DeterminizationBudget budget) {
+			this.a = a;
+			this.budget = budget;
+			started = System.currentTimeMillis();
+			NumberedAutomaton n = new NumberedAutomaton(a, initialset);
+			points = n.getStartPoints();
+			mins = n.min;
+			maxs = n.max;
+			tos = n.to;
+			accept = n.accept;
+			this.initialset = new int[initialset.size()];
+			int j = 0;
+			for (State s : initialset)
+				this.initialset[j++] = s.number;
+			Arrays.sort(this.initialset);
+		}
+
+		/**
+		 * Runs the sequential subset construction.
+		 */
+		void run() {
+			sweep(Integer.MAX_VALUE);
+			finish();
+		}
+
+		/**
+		 * Runs the sequential subset construction until more than <code>frontier</code>
+		 * state sets are waiting to be processed.
+		 * Returns the number of processed state sets, which is <code>subsets.size</code> if done.
+		 */
+		int sweep(int frontier) {
+			int n = accept.length;
+			subsets = new SetTable();
+			states = new State[16];
+			int[] counts = new int[n]; // number of transitions with the current char to each state
+			int[] active = new int[n]; // states with nonzero count
+			int[] pos = new int[n]; // positions in active
+			int nactive = 0;
+			int[] target = new int[n];
+			long[] events = new long[16]; // (char << 32) | (1 << 31 if leaving a transition) | state
+			intern(initialset, initialset.length);
+			for (int id = 0; id < subsets.size; id++) {
+				if (subsets.size - id > frontier)
+					return id;
+				if (budget != null)
+					budget.check(subsets.size, transitions, started);
+				int[] set = subsets.sets[id];
+				State r = states[id];
+				int ne = 0;
+				for (int q : set) {
+					char[] min = mins[q];
+					if (ne + 2 * min.length > events.length)
+						events = Arrays.copyOf(events, Math.max(events.length * 2, ne + 2 * min.length));
+					for (int j = 0; j < min.length; j++) {
+						events[ne++] = ((long)min[j] << 32) | tos[q][j];
+						if (maxs[q][j] < Character.MAX_VALUE)
+							events[ne++] = ((long)(maxs[q][j] + 1) << 32) | (1L << 31) | tos[q][j];
+					}
+				}
+				Arrays.sort(events, 0, ne);
+				int current = -1; // new state number of the current successor set, -1 if empty
+				int start = 0; // first char of the current successor
+				for (int e = 0; e < ne;) {
+					int c = (int)(events[e] >>> 32);
+					for (; e < ne && (int)(events[e] >>> 32) == c; e++) {
+						int q = (int)(events[e] & 0x7fffffff);
+						if ((events[e] & (1L << 31)) == 0) {
+							if (counts[q]++ == 0) {
+								pos[q] = nactive;
+								active[nactive++] = q;
+							}
+						} else if (--counts[q] == 0) {
+							int last = active[--nactive];
+							active[pos[q]] = last;
+							pos[last] = pos[q];
+						}
+					}
+					int next = -1;
+					if (nactive > 0) {
+						System.arraycopy(active, 0, target, 0, nactive);
+						Arrays.sort(target, 0, nactive);
+						next = intern(target, nactive);
+					}
+					if (next != current) {
+						if (current != -1) {
+							r.transitions.add(new Transition((char)start, (char)(c - 1), states[current]));
+							transitions++;
+						}
+						current = next;
+						start = c;
+					}
+				}
+				if (current != -1) {
+					r.transitions.add(new Transition((char)start, Character.MAX_VALUE, states[current]));
+					transitions++;
+				}
+				for (int j = 0; j < nactive; j++)
+					counts[active[j]] = 0;
+				nactive = 0;
+			}
+			return subsets.size;
+		}
+
+		/**
+		 * Makes the new states the states of the automaton.
+		 */
+		void finish() {
+			if (budget != null)
+				budget.check(subsets.size, transitions, started);
+			a.initial = states[0];
+			a.deterministic = true;
+			a.removeDeadTransitions();
+		}
+
+		/**
+		 * Returns the number of the new state for the given sorted set of states, 
+		 * creating the state if it does not exist.
+		 */
+		int intern(int[] set, int length) {
+			int n = subsets.size;
+			int id = subsets.intern(set, length);
+			if (id == n) {
+				if (id == states.length)
+					states = Arrays.copyOf(states, id * 2);
+				State s = new State();
+				for (int j = 0; j < length; j++)
+					if (accept[set[j]]) {
+						s.accept = true;
+						break;
+					}
+				states[id] = s;
+				if (budget != null && subsets.size > budget.max_states)
+					budget.check(subsets.size, transitions, started);
+			}
+			return id;
+		}
+
+		/**
+		 * Runs the subset construction using the given number of threads.
+		 */
+		void run(int threads) {
+			int done = sweep(PARALLEL_MIN_FRONTIER);
+			if (done < subsets.size) {
+				SubsetState[] level = new SubsetState[subsets.size - done];
+				for (int id = 0; id < subsets.size; id++) {
+					SubsetState s = new SubsetState(subsets.sets[id]);
+					s.state = states[id];
+					sets.put(s, s);
+					if (id >= done)
+						level[id - done] = s;
+				}
+				expand(level, threads);
+			}
+			finish();
+		}
+
+		/**
+		 * Runs the parallel subset construction from the given level, whose state sets
+		 * are in <code>sets</code> together with all state sets found so far.
+		 */
+		void expand(SubsetState[] level, int threads) {
+			ForkJoinPool pool = getPool(threads);
+			List<SubsetState> all = new ArrayList<SubsetState>();
+			while (level.length > 0) {
+				all.addAll(Arrays.asList(level));
+				ConcurrentLinkedQueue<SubsetState> next = new ConcurrentLinkedQueue<SubsetState>();
+				Task t = new Task(level, 0, level.length, next);
+				if (level.length <= TASK_SIZE)
+					t.compute();
+				else
+					pool.invoke(t);
+				for (SubsetState s : level)
+					for (SubsetState r : s.to)
+						if (r != null)
+							transitions++;
+				if (budget != null)
+					budget.check(sets.size(), transitions, started);
+				level = next.toArray(new SubsetState[next.size()]);
+			}
+			for (SubsetState s : all)
+				if (s.state == null)
+					s.state = new State();
+			for (SubsetState s : all) {
+				s.state.accept = s.accept;
+				for (int n = 0; n < points.length; n++)
+					if (s.to[n] != null) {
+						char max;
+						if (n + 1 < points.length)
+							max = (char) (points[n + 1] - 1);
+						else
+							max = Character.MAX_VALUE;
+						s.state.transitions.add(new Transition(points[n], max, s.to[n].state));
+					}
+			}
+		}
+
+		/**
+		 * Returns the shared pool with the given number of threads, replacing it if 
+		 * it has a different number of threads. The threads of a replaced pool 
+		 * terminate when idle.
+		 */
+		static synchronized ForkJoinPool getPool(int threads) {
+			if (pool == null || pool.getParallelism() != threads)
+				pool = new ForkJoinPool(threads);
+			return pool;
+		}
+
+		/**
+		 * Computes the acceptance status and successors of the given state set.
+		 * New successor sets are added to <code>next</code>.
+		 */
+		void expand(SubsetState s, BitSet scratch, Queue<SubsetState> next) {
+			for (int q : s.set)
+				if (accept[q]) {
+					s.accept = true;
 					break;
 				}
+			s.to = new SubsetState[points.length];
 			for (int n = 0; n < points.length; n++) {
-				Set<State> p = new HashSet<State>();
-				for (State q : s)
-					for (Transition t : q.transitions)
-						if (t.min <= points[n] && points[n] <= t.max)
-							p.add(t.to);
-				if (!p.isEmpty()) {
-                    State q = newstate.get(p);
-                    if (q == null) {
-                        worklist.add(p);
-                        q = new State();
-                        newstate.put(p, q);
-                    }
-                    char min = points[n];
-                    char max;
-                    if (n + 1 < points.length)
-                        max = (char) (points[n + 1] - 1);
-                    else
-                        max = Character.MAX_VALUE;
-                    r.transitions.add(new Transition(min, max, q));
-                }
-			}
-		}
-		a.deterministic = true;
-		a.removeDeadTransitions();
+				char c = points[n];
+				scratch.clear();
+				for (int q : s.set) {
+					char[] min = mins[q];
+					for (int j = 0; j < min.length && min[j] <= c; j++)
+						if (c <= maxs[q][j])
+							scratch.set(tos[q][j]);
+				}
+				if (scratch.isEmpty())
+					continue;
+				int[] p = new int[scratch.cardinality()];
+				for (int i = scratch.nextSetBit(0), j = 0; i >= 0; i = scratch.nextSetBit(i + 1))
+					p[j++] = i;
+				SubsetState r = new SubsetState(p);
+				SubsetState old = sets.putIfAbsent(r, r);
+				if (old == null)
+					next.add(r);
+				else
+					r = old;
+				s.to[n] = r;
+			}
+		}
+
+		class Task extends RecursiveAction {
+
+			static final long serialVersionUID = 1;
+
+			final SubsetState[] level;
+			final int from, to;
+			final Queue<SubsetState> next;
+
+			Task(SubsetState[] level, int from, int to, Queue<SubsetState> next) {
+				this.level = level;
+				this.from = from;
+				this.to = to;
+				this.next = next;
+			}
+
+			@Override
+			protected void compute() {
+				if (to - from <= TASK_SIZE) {
+					BitSet scratch = new BitSet(accept.length);
+					for (int i = from; i < to; i++) {
+						if (budget != null)
+							budget.check(sets.size(), transitions, started);
+						expand(level[i], scratch, next);
+					}
+				} else {
+					int mid = (from + to) >>> 1;
+					invokeAll(new Task(level, from, mid, next), new Task(level, mid, to, next));
+				}
+			}
+		}
+	}
+
+	/**
+	 * State of the deterministic automaton under construction, identified by a sorted
+	 * array of state numbers of the original automaton.
+	 */
+	static class SubsetState {
+
+		final int[] set;
+		final int hash;
+		boolean accept;
+		SubsetState[] to; // successors, by char class
+		State state;
+
+		SubsetState(int[] set) {
+			this.set = set;
+			hash = Arrays.hashCode(set);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof SubsetState && Arrays.equals(set, ((SubsetState)obj).set);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Automaton with numbered states, where the sorted transitions of each state 
+	 * are stored in arrays.
+	 */
+	static class NumberedAutomaton {
+
+		final char[][] min; // interval start chars, by state number
+		final char[][] max; // interval end chars, by state number
+		final int[][] to; // destination state numbers, by state number
+		final boolean[] accept;
+		final int initial;
+
+		/**
+		 * Constructs the arrays for the given automaton, setting its state numbers.
+		 */
+		NumberedAutomaton(Automaton a) {
+			this(a, Collections.<State>emptySet());
+		}
+
+		/**
+		 * Constructs the arrays for the states of the given automaton that are reachable
+		 * from its initial state or from the given states, setting their state numbers.
+		 */
+		NumberedAutomaton(Automaton a, Collection<State> roots) {
+			Set<State> states = a.getStates();
+			LinkedList<State> worklist = new LinkedList<State>();
+			for (State s : roots)
+				if (states.add(s))
+					worklist.add(s);
+			while (worklist.size() > 0) {
+				State s = worklist.removeFirst();
+				for (Transition t : s.transitions)
+					if (states.add(t.to))
+						worklist.add(t.to);
+			}
+			Transition[][] t = Automaton.getSortedTransitions(states);
+			int n = states.size();
+			min = new char[n][];
+			max = new char[n][];
+			to = new int[n][];
+			accept = new boolean[n];
+			for (State s : states) {
+				int i = s.number;
+				accept[i] = s.accept;
+				min[i] = new char[t[i].length];
+				max[i] = new char[t[i].length];
+				to[i] = new int[t[i].length];
+				for (int j = 0; j < t[i].length; j++) {
+					min[i][j] = t[i][j].min;
+					max[i][j] = t[i][j].max;
+					to[i][j] = t[i][j].to.number;
+				}
+			}
+			initial = a.initial.number;
+		}
+
+		/**
+		 * Returns the sorted chars where the transitions of some state start or end, including 0.
+		 */
+		char[] getStartPoints() {
+			int n = 1;
+			for (char[] m : min)
+				n += 2 * m.length;
+			char[] points = new char[n];
+			int k = 1;
+			for (int i = 0; i < min.length; i++)
+				for (int j = 0; j < min[i].length; j++) {
+					points[k++] = min[i][j];
+					if (max[i][j] < Character.MAX_VALUE)
+						points[k++] = (char)(max[i][j] + 1);
+				}
+			Arrays.sort(points, 0, k);
+			int m = 0;
+			for (int i = 0; i < k; i++)
+				if (i == 0 || points[i] != points[m - 1])
+					points[m++] = points[i];
+			return Arrays.copyOf(points, m);
+		}
+	}
+
+	/**
+	 * Open addressing hash table that numbers sorted arrays of state numbers.
+	 */
+	static class SetTable {
+
+		int[][] sets = new int[16][]; // sets, by number
+		int[] hashes = new int[16]; // hash codes of sets, by number
+		int[] slots = new int[32]; // set numbers plus one, 0 for empty slots
+		int size;
+
+		/**
+		 * Returns the number of the set given by the first <code>length</code> elements
+		 * of the array, adding a copy if not already present. 
+		 * New sets are numbered consecutively.
+		 */
+		int intern(int[] set, int length) {
+			int h = 1;
+			for (int i = 0; i < length; i++)
+				h = 31 * h + set[i];
+			int mask = slots.length - 1;
+			int i = (h ^ (h >>> 16)) & mask;
+			for (; slots[i] != 0; i = (i + 1) & mask) {
+				int id = slots[i] - 1;
+				if (hashes[id] == h && equals(sets[id], set, length))
+					return id;
+			}
+			if (size == sets.length) {
+				sets = Arrays.copyOf(sets, size * 2);
+				hashes = Arrays.copyOf(hashes, size * 2);
+			}
+			int id = size++;
+			sets[id] = Arrays.copyOf(set, length);
+			hashes[id] = h;
+			slots[i] = id + 1;
+			if (2 * size > slots.length) {
+				slots = new int[slots.length * 2];
+				mask = slots.length - 1;
+				for (int r = 0; r < size; r++) {
+					int j = (hashes[r] ^ (hashes[r] >>> 16)) & mask;
+					while (slots[j] != 0)
+						j = (j + 1) & mask;
+					slots[j] = r + 1;
+				}
+			}
+			return id;
+		}
+
+		private static boolean equals(int[] a, int[] b, int length) {
+			if (a.length != length)
+				return false;
+			for (int i = 0; i < length; i++)
+				if (a[i] != b[i])
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Open addressing hash table that numbers pairs of states, 
+	 * each represented as <code>s1 * n2 + s2</code> where <code>n2</code> is the
+	 * number of states of the second automaton.
+	 */
+	static class PairTable {
+
+		long[] keys = new long[16]; // pairs, by number
+		int[] slots = new int[32]; // pair numbers plus one, 0 for empty slots
+		int size;
+
+		/**
+		 * Returns the number of the given pair, adding it if not already present.
+		 * New pairs are numbered consecutively.
+		 */
+		int intern(long key) {
+			int mask = slots.length - 1;
+			int i = hash(key) & mask;
+			for (; slots[i] != 0; i = (i + 1) & mask)
+				if (keys[slots[i] - 1] == key)
+					return slots[i] - 1;
+			if (size == keys.length)
+				keys = Arrays.copyOf(keys, size * 2);
+			int id = size++;
+			keys[id] = key;
+			slots[i] = id + 1;
+			if (2 * size > slots.length) {
+				slots = new int[slots.length * 2];
+				mask = slots.length - 1;
+				for (int r = 0; r < size; r++) {
+					int j = hash(keys[r]) & mask;
+					while (slots[j] != 0)
+						j = (j + 1) & mask;
+					slots[j] = r + 1;
+				}
+			}
+			return id;
+		}
+
+		/**
+		 * Returns true if the given pair has been added.
+		 */
+		boolean contains(long key) {
+			int mask = slots.length - 1;
+			for (int i = hash(key) & mask; slots[i] != 0; i = (i + 1) & mask)
+				if (keys[slots[i] - 1] == key)
+					return true;
+			return false;
+		}
+
+		private static int hash(long key) {
+			key *= 0x9e3779b97f4a7c15L;
+			return (int)(key ^ (key >>> 32));
+		}
 	}
 
 	/** 
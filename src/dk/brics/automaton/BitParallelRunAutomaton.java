@@ -0,0 +1,223 @@
+/*
+ * dk.brics.automaton
+ *
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finite-state automaton that runs small nondeterministic automata by bit-parallel simulation.
+ * <p>
+ * The automaton is converted to a homogeneous form where each <i>position</i>
+ * corresponds to a distinct transition target and label (as in Glushkov's
+ * construction). All transitions into a position then have the same label, so
+ * a set of active positions is updated for each char by taking the union of
+ * the follow sets of the active positions and intersecting with the positions
+ * labeled with the char. Positions are represented as bits, and the follow
+ * sets are tabulated for each 8 bits, so each char takes a constant number of
+ * word operations. No determinization is performed, and running takes linear
+ * time in the length of the input.
+ */
+public class BitParallelRunAutomaton implements Serializable {
+
+	static final long serialVersionUID = 70001;
+
+	/** Maximum number of positions. */
+	public static final int MAX_POSITIONS = 256;
+
+	char[] points; // char interval start points
+	int positions;
+	int words; // number of longs per position set
+	long[] follow; // follow[((j * 256) + b) * words + i] = word i of the union of follow sets of the positions 8j+k where bit k of b is set
+	long[] masks; // masks[c * words + i] = word i of the set of positions whose label includes char class c
+	long[] accept; // accept positions
+
+	/**
+	 * Constructs a new <code>BitParallelRunAutomaton</code> from an <code>Automaton</code>.
+	 * The given automaton is not modified and may be nondeterministic.
+	 * @param a an automaton
+	 * @exception IllegalArgumentException if the automaton has more than {@link #MAX_POSITIONS}
+	 *            positions, that is, distinct transition targets and labels (plus one)
+	 */
+	public BitParallelRunAutomaton(Automaton a) {
+		points = a.getStartPoints();
+		Set<State> states = a.getStates();
+		Automaton.setStateNumbers(states);
+		// number the positions, 0 being the initial state
+		Map<Transition, Integer> m = new HashMap<Transition, Integer>();
+		for (State s : states)
+			for (Transition t : s.transitions)
+				if (!m.containsKey(t))
+					m.put(t, m.size() + 1);
+		positions = m.size() + 1;
+		if (positions > MAX_POSITIONS)
+			throw new IllegalArgumentException("too many positions for bit-parallel simulation: " + positions);
+		words = (positions + 63) >>> 6;
+		State[] target = new State[positions];
+		Transition[] label = new Transition[positions];
+		target[0] = a.initial;
+		for (Map.Entry<Transition, Integer> e : m.entrySet()) {
+			target[e.getValue()] = e.getKey().to;
+			label[e.getValue()] = e.getKey();
+		}
+		// positions reachable from each state
+		long[][] out = new long[states.size()][words];
+		for (State s : states)
+			for (Transition t : s.transitions)
+				set(out[s.number], 0, m.get(t));
+		accept = new long[words];
+		masks = new long[points.length * words];
+		for (int p = 0; p < positions; p++) {
+			if (target[p].accept)
+				set(accept, 0, p);
+			if (p > 0)
+				for (int c = SpecialOperations.findIndex(label[p].min, points); c < points.length && points[c] <= label[p].max; c++)
+					set(masks, c * words, p);
+		}
+		int chunks = words * 8;
+		follow = new long[chunks * 256 * words];
+		for (int j = 0; j < chunks; j++)
+			for (int b = 1; b < 256; b++) {
+				int low = Integer.numberOfTrailingZeros(b);
+				int p = j * 8 + low;
+				int n = (j * 256 + b) * words;
+				int r = (j * 256 + (b & (b - 1))) * words;
+				for (int i = 0; i < words; i++) {
+					follow[n + i] = follow[r + i];
+					if (p < positions)
+						follow[n + i] |= out[target[p].number][i];
+				}
+			}
+	}
+
+	private static void set(long[] bits, int offset, int p) {
+		bits[offset + (p >>> 6)] |= 1L << (p & 63);
+	}
+
+	/**
+	 * Returns the number of positions.
+	 */
+	public int getNumberOfPositions() {
+		return positions;
+	}
+
+	/**
+	 * Returns true if the given string is accepted by this automaton.
+	 */
+	public boolean run(CharSequence s) {
+		return run(s, 0, true) == s.length();
+	}
+
+	/**
+	 * Returns the length of the longest accepted run of the given string
+	 * starting at the given offset.
+	 * @param s the string
+	 * @param offset offset into <code>s</code> where the run starts
+	 * @return length of the longest accepted run, -1 if no run is accepted
+	 */
+	public int run(CharSequence s, int offset) {
+		return run(s, offset, false);
+	}
+
+	/**
+	 * Runs from the given offset, returning the length of the longest accepted run
+	 * or -1. If <code>whole</code> is set, only acceptance at the end of the input is checked.
+	 */
+	private int run(CharSequence s, int offset, boolean whole) {
+		if (words == 1)
+			return runSingle(s, offset, whole);
+		int l = s.length();
+		int max = -1;
+		long[] d = new long[words];
+		long[] f = new long[words];
+		d[0] = 1;
+		for (int i = offset; ; i++) {
+			if ((!whole || i == l) && intersects(d, accept))
+				max = i - offset;
+			if (i == l)
+				break;
+			int c = SpecialOperations.findIndex(s.charAt(i), points);
+			for (int k = 0; k < words; k++)
+				f[k] = 0;
+			for (int k = 0; k < words; k++)
+				for (long w = d[k]; w != 0; ) {
+					int z = Long.numberOfTrailingZeros(w) & ~7;
+					int n = ((((k << 3) + (z >>> 3)) << 8) + (int)((w >>> z) & 0xff)) * words;
+					for (int j = 0; j < words; j++)
+						f[j] |= follow[n + j];
+					w &= ~(0xffL << z);
+				}
+			boolean live = false;
+			for (int k = 0; k < words; k++) {
+				d[k] = f[k] & masks[c * words + k];
+				live |= d[k] != 0;
+			}
+			if (!live)
+				break;
+		}
+		return max;
+	}
+
+	/**
+	 * Specialization of {@link #run(CharSequence, int, boolean)} for at most 64 positions.
+	 */
+	private int runSingle(CharSequence s, int offset, boolean whole) {
+		int l = s.length();
+		int max = -1;
+		long acc = accept[0];
+		long d = 1;
+		for (int i = offset; ; i++) {
+			if ((!whole || i == l) && (d & acc) != 0)
+				max = i - offset;
+			if (i == l)
+				break;
+			int c = SpecialOperations.findIndex(s.charAt(i), points);
+			long f = 0;
+			for (long w = d; w != 0; ) {
+				int z = Long.numberOfTrailingZeros(w) & ~7;
+				f |= follow[((z >>> 3) << 8) + (int)((w >>> z) & 0xff)];
+				w &= ~(0xffL << z);
+			}
+			d = f & masks[c];
+			if (d == 0)
+				break;
+		}
+		return max;
+	}
+
+	private static boolean intersects(long[] a, long[] b) {
+		for (int i = 0; i < a.length; i++)
+			if ((a[i] & b[i]) != 0)
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * dk.brics.automaton
+ *
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finite-state automaton with fast run operation on UTF-8 encoded input.
+ * <p>
+ * The automaton is constructed from an ordinary (UTF-16 based) <code>Automaton</code>
+ * by translating each transition into the UTF-8 byte sequences of the characters it
+ * accepts. Surrogate pairs are translated into the 4-byte encoding of the
+ * supplementary code point they represent. Byte sequences that are not valid UTF-8
+ * are rejected.
+ * <p>
+ * The inherited methods, such as {@link #step(int, char)} and {@link #run(String)},
+ * treat each char as a byte value in the range 0-255.
+ */
+public class ByteRunAutomaton extends RunAutomaton {
+
+	static final long serialVersionUID = 60001;
+
+	private static final int[] MAX_CODE_POINT = {0x7f, 0x7ff, 0xffff, 0x10ffff};
+
+	/**
+	 * Constructs a new <code>ByteRunAutomaton</code> that accepts the UTF-8
+	 * encodings of the strings accepted by the given automaton.
+	 * The given automaton is not modified.
+	 * @param a an automaton
+	 */
+	public ByteRunAutomaton(Automaton a) {
+		super(toUTF8(a), ALPHABET_PAGED);
+	}
+
+	/**
+	 * Returns true if the given bytes are accepted by this automaton.
+	 * @param buf byte array
+	 * @param off offset of the first byte
+	 * @param len number of bytes
+	 */
+	public boolean run(byte[] buf, int off, int len) {
+		int p = initial;
+		int k = points.length;
+		for (int i = off, end = off + len; i < end; i++) {
+			p = getTransition(p * k + getCharClass((char)(buf[i] & 0xff)));
+			if (p == -1)
+				return false;
+		}
+		return accept[p];
+	}
+
+	/**
+	 * Returns true if the remaining bytes of the given buffer (from its position to
+	 * its limit) are accepted by this automaton. The position of the buffer is not changed.
+	 * @param buf byte buffer
+	 */
+	public boolean run(ByteBuffer buf) {
+		int p = initial;
+		int k = points.length;
+		for (int i = buf.position(), end = buf.limit(); i < end; i++) {
+			p = getTransition(p * k + getCharClass((char)(buf.get(i) & 0xff)));
+			if (p == -1)
+				return false;
+		}
+		return accept[p];
+	}
+
+	/**
+	 * Returns a minimal deterministic automaton over the alphabet 0-255 that accepts
+	 * the UTF-8 encodings of the strings accepted by the given automaton.
+	 */
+	static Automaton toUTF8(Automaton a) {
+		a = a.cloneExpanded();
+		a.determinize();
+		Set<State> states = a.getStates();
+		Map<State, State> m = new HashMap<State, State>();
+		for (State s : states) {
+			State r = new State();
+			r.accept = s.accept;
+			m.put(s, r);
+		}
+		for (State s : states) {
+			State from = m.get(s);
+			for (Transition t : s.transitions) {
+				State to = m.get(t.to);
+				if (t.min < 0xd800)
+					addCodePoints(from, to, t.min, Math.min(t.max, 0xd7ff));
+				if (t.max > 0xdfff)
+					addCodePoints(from, to, Math.max(t.min, 0xe000), t.max);
+				// a high surrogate followed by a low surrogate forms a supplementary code point
+				int hmin = Math.max(t.min, 0xd800);
+				int hmax = Math.min(t.max, 0xdbff);
+				if (hmin <= hmax)
+					for (Transition u : t.to.transitions) {
+						int lmin = Math.max(u.min, 0xdc00);
+						int lmax = Math.min(u.max, 0xdfff);
+						if (lmin > lmax)
+							continue;
+						if (lmin == 0xdc00 && lmax == 0xdfff)
+							addCodePoints(from, m.get(u.to), toCodePoint(hmin, lmin), toCodePoint(hmax, lmax));
+						else
+							for (int h = hmin; h <= hmax; h++)
+								addCodePoints(from, m.get(u.to), toCodePoint(h, lmin), toCodePoint(h, lmax));
+					}
+			}
+		}
+		Automaton b = new Automaton();
+		b.initial = m.get(a.initial);
+		b.deterministic = false;
+		b.minimize();
+		return b;
+	}
+
+	private static int toCodePoint(int high, int low) {
+		return 0x10000 + ((high - 0xd800) << 10) + (low - 0xdc00);
+	}
+
+	/**
+	 * Adds byte transition paths from <code>from</code> to <code>to</code> for the UTF-8
+	 * encodings of the code points from <code>min</code> to <code>max</code>.
+	 */
+	private static void addCodePoints(State from, State to, int min, int max) {
+		for (int n = 0; n < MAX_CODE_POINT.length && min <= max; n++)
+			if (min <= MAX_CODE_POINT[n]) {
+				addCodePoints(from, to, min, Math.min(max, MAX_CODE_POINT[n]), n + 1);
+				min = MAX_CODE_POINT[n] + 1;
+			}
+	}
+
+	/**
+	 * Adds byte transition paths for code points that all have UTF-8 encodings of the given length.
+	 * The range is split until the set of encodings is a product of byte ranges.
+	 */
+	private static void addCodePoints(State from, State to, int min, int max, int length) {
+		for (int i = 1; i < length; i++) {
+			int m = (1 << (6 * i)) - 1;
+			if ((min & ~m) != (max & ~m)) {
+				if ((min & m) != 0) {
+					addCodePoints(from, to, min, min | m, length);
+					addCodePoints(from, to, (min | m) + 1, max, length);
+					return;
+				}
+				if ((max & m) != m) {
+					addCodePoints(from, to, min, (max & ~m) - 1, length);
+					addCodePoints(from, to, max & ~m, max, length);
+					return;
+				}
+			}
+		}
+		int[] lo = encode(min, length);
+		int[] hi = encode(max, length);
+		State s = from;
+		for (int i = 0; i < length - 1; i++) {
+			State q = new State();
+			s.transitions.add(new Transition((char)lo[i], (char)hi[i], q));
+			s = q;
+		}
+		s.transitions.add(new Transition((char)lo[length - 1], (char)hi[length - 1], to));
+	}
+
+	/**
+	 * Returns the UTF-8 encoding of the given code point as byte values 0-255.
+	 */
+	private static int[] encode(int c, int length) {
+		int[] b = new int[length];
+		switch (length) {
+		case 1:
+			b[0] = c;
+			break;
+		case 2:
+			b[0] = 0xc0 | (c >> 6);
+			b[1] = 0x80 | (c & 0x3f);
+			break;
+		case 3:
+			b[0] = 0xe0 | (c >> 12);
+			b[1] = 0x80 | ((c >> 6) & 0x3f);
+			b[2] = 0x80 | (c & 0x3f);
+			break;
+		default:
+			b[0] = 0xf0 | (c >> 18);
+			b[1] = 0x80 | ((c >> 12) & 0x3f);
+			b[2] = 0x80 | ((c >> 6) & 0x3f);
+			b[3] = 0x80 | (c & 0x3f);
+		}
+		return b;
+	}
+}
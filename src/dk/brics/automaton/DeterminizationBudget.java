@@ -0,0 +1,157 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+/**
+ * Limits on the work done by determinization.
+ * A budget bounds the number of states and transitions of the resulting automaton
+ * and the time spent, and it can be cancelled from another thread.
+ * When a limit is exceeded, determinization throws a {@link DeterminizationLimitException}
+ * and leaves the automaton unchanged.
+ * @see BasicOperations#determinize(Automaton, DeterminizationBudget)
+ * @see RunAutomaton#RunAutomaton(Automaton, int, int, DeterminizationBudget)
+ */
+public class DeterminizationBudget {
+
+	int max_states = Integer.MAX_VALUE;
+	int max_transitions = Integer.MAX_VALUE;
+	long deadline = Long.MAX_VALUE;
+	volatile boolean cancelled;
+
+	/**
+	 * Constructs a new budget with no limits.
+	 */
+	public DeterminizationBudget() {}
+
+	/**
+	 * Constructs a new budget with the given maximum number of states and transitions.
+	 * @param max_states maximum number of states
+	 * @param max_transitions maximum number of transitions
+	 * @exception IllegalArgumentException if a limit is negative
+	 */
+	public DeterminizationBudget(int max_states, int max_transitions) {
+		setMaxStates(max_states);
+		setMaxTransitions(max_transitions);
+	}
+
+	/**
+	 * Sets the maximum number of states of the determinized automaton (default: no limit).
+	 * @exception IllegalArgumentException if <code>max_states</code> is negative
+	 */
+	public void setMaxStates(int max_states) {
+		if (max_states < 0)
+			throw new IllegalArgumentException("maximum number of states must be nonnegative");
+		this.max_states = max_states;
+	}
+
+	/**
+	 * Sets the maximum number of transitions of the determinized automaton (default: no limit).
+	 * @exception IllegalArgumentException if <code>max_transitions</code> is negative
+	 */
+	public void setMaxTransitions(int max_transitions) {
+		if (max_transitions < 0)
+			throw new IllegalArgumentException("maximum number of transitions must be nonnegative");
+		this.max_transitions = max_transitions;
+	}
+
+	/**
+	 * Sets the deadline (default: none).
+	 * @param deadline time in milliseconds, as returned by {@link System#currentTimeMillis()}
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Sets the deadline to the given number of milliseconds from now.
+	 * @exception IllegalArgumentException if <code>millis</code> is negative
+	 */
+	public void setTimeout(long millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("timeout must be nonnegative");
+		long now = System.currentTimeMillis();
+		deadline = now + millis < now ? Long.MAX_VALUE : now + millis;
+	}
+
+	/**
+	 * Returns the maximum number of states.
+	 */
+	public int getMaxStates() {
+		return max_states;
+	}
+
+	/**
+	 * Returns the maximum number of transitions.
+	 */
+	public int getMaxTransitions() {
+		return max_transitions;
+	}
+
+	/**
+	 * Returns the deadline, or <code>Long.MAX_VALUE</code> if none.
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Cancels determinizations using this budget. 
+	 * May be called from any thread; running determinizations stop shortly after.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if this budget has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Throws a {@link DeterminizationLimitException} if a limit is exceeded 
+	 * with the given number of states and transitions.
+	 */
+	void check(int states, int transitions, long started) {
+		int reason;
+		if (cancelled)
+			reason = DeterminizationLimitException.CANCELLED;
+		else if (states > max_states)
+			reason = DeterminizationLimitException.STATES;
+		else if (transitions > max_transitions)
+			reason = DeterminizationLimitException.TRANSITIONS;
+		else if (deadline != Long.MAX_VALUE && System.currentTimeMillis() > deadline)
+			reason = DeterminizationLimitException.DEADLINE;
+		else
+			return;
+		throw new DeterminizationLimitException(reason, states, transitions, System.currentTimeMillis() - started);
+	}
+}
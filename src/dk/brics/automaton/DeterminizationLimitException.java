@@ -0,0 +1,106 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+/**
+ * Thrown when determinization exceeds a {@link DeterminizationBudget}.
+ * The exception records which limit was exceeded and how far the construction got.
+ */
+public class DeterminizationLimitException extends RuntimeException {
+
+	static final long serialVersionUID = 1;
+
+	/** The maximum number of states was exceeded. */
+	public static final int STATES = 0;
+
+	/** The maximum number of transitions was exceeded. */
+	public static final int TRANSITIONS = 1;
+
+	/** The deadline passed. */
+	public static final int DEADLINE = 2;
+
+	/** The budget was cancelled. */
+	public static final int CANCELLED = 3;
+
+	final int reason;
+	final int states;
+	final int transitions;
+	final long elapsed;
+
+	DeterminizationLimitException(int reason, int states, int transitions, long elapsed) {
+		super(message(reason) + " after " + states + " states, " + transitions + " transitions, " + elapsed + " ms");
+		this.reason = reason;
+		this.states = states;
+		this.transitions = transitions;
+		this.elapsed = elapsed;
+	}
+
+	private static String message(int reason) {
+		switch (reason) {
+		case STATES:
+			return "state limit exceeded";
+		case TRANSITIONS:
+			return "transition limit exceeded";
+		case DEADLINE:
+			return "deadline passed";
+		default:
+			return "determinization cancelled";
+		}
+	}
+
+	/**
+	 * Returns the limit that was exceeded, one of {@link #STATES}, {@link #TRANSITIONS}, 
+	 * {@link #DEADLINE}, and {@link #CANCELLED}.
+	 */
+	public int getReason() {
+		return reason;
+	}
+
+	/**
+	 * Returns the number of states found when determinization stopped.
+	 */
+	public int getStates() {
+		return states;
+	}
+
+	/**
+	 * Returns the number of transitions created when determinization stopped.
+	 */
+	public int getTransitions() {
+		return transitions;
+	}
+
+	/**
+	 * Returns the time spent in milliseconds.
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+}
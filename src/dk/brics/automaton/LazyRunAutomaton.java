@@ -0,0 +1,286 @@
+/*
+ * dk.brics.automaton
+ *
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Finite-state automaton that is determinized lazily while running.
+ * <p>
+ * Unlike {@link RunAutomaton}, construction does not determinize the given automaton.
+ * Instead, deterministic states (sets of states of the original automaton) and their
+ * transitions are created when the input first reaches them and are kept in a cache
+ * of bounded size. When the cache is full, it is cleared. If the cache is cleared
+ * too often during a run, the remainder of the input is processed by ordinary
+ * nondeterministic simulation. Running takes linear time in the length of the input
+ * in all cases, and memory is bounded by the cache size.
+ * <p>
+ * Instances are not thread safe, since the cache is updated while running.
+ */
+public class LazyRunAutomaton {
+
+	/** Default maximum number of cached states. */
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+
+	/** Minimum average number of chars processed per cached state between cache flushes. */
+	static final int MIN_CHARS_PER_STATE = 10;
+
+	private static final int UNKNOWN = -2;
+
+	char[] points; // char interval start points
+	char[][] mins; // transitions of the nondeterministic automaton, by state
+	char[][] maxs;
+	int[][] tos;
+	boolean[] nfaaccept;
+	int[] initialset;
+
+	int capacity;
+	HashMap<StateSet, Integer> cache;
+	int[][] sets; // sets of nondeterministic states, by cached state
+	boolean[] accept; // acceptance status, by cached state
+	int[] transitions; // cached transitions, UNKNOWN if not yet computed
+	int count; // number of cached states
+	int flushes;
+	BitSet scratch;
+
+	/**
+	 * Constructs a new <code>LazyRunAutomaton</code> from an <code>Automaton</code>,
+	 * using the default cache size.
+	 * @param a an automaton
+	 */
+	public LazyRunAutomaton(Automaton a) {
+		this(a, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructs a new <code>LazyRunAutomaton</code> from an <code>Automaton</code>.
+	 * The given automaton is not modified (except for state numbering)
+	 * and may be nondeterministic.
+	 * @param a an automaton
+	 * @param capacity maximum number of cached deterministic states
+	 * @exception IllegalArgumentException if <code>capacity</code> is less than 2
+	 */
+	public LazyRunAutomaton(Automaton a, int capacity) {
+		if (capacity < 2)
+			throw new IllegalArgumentException("cache size must be at least 2");
+		this.capacity = capacity;
+		points = a.getStartPoints();
+		Set<State> states = a.getStates();
+		Transition[][] t = Automaton.getSortedTransitions(states);
+		int n = states.size();
+		mins = new char[n][];
+		maxs = new char[n][];
+		tos = new int[n][];
+		nfaaccept = new boolean[n];
+		for (State s : states) {
+			int i = s.number;
+			nfaaccept[i] = s.accept;
+			mins[i] = new char[t[i].length];
+			maxs[i] = new char[t[i].length];
+			tos[i] = new int[t[i].length];
+			for (int j = 0; j < t[i].length; j++) {
+				mins[i][j] = t[i][j].min;
+				maxs[i][j] = t[i][j].max;
+				tos[i][j] = t[i][j].to.number;
+			}
+		}
+		initialset = new int[] {a.initial.number};
+		scratch = new BitSet(n);
+		cache = new HashMap<StateSet, Integer>();
+		sets = new int[Math.min(capacity, 16)][];
+		accept = new boolean[sets.length];
+		transitions = new int[sets.length * points.length];
+		addState(initialset);
+	}
+
+	/**
+	 * Returns true if the given string is accepted by this automaton.
+	 */
+	public boolean run(CharSequence s) {
+		int k = points.length;
+		int l = s.length();
+		int p = 0;
+		int flushed = 0;
+		for (int i = 0; i < l; i++) {
+			int c = SpecialOperations.findIndex(s.charAt(i), points);
+			int q = transitions[p * k + c];
+			if (q == UNKNOWN) {
+				int f = flushes;
+				q = computeTransition(p, c);
+				if (f != flushes) {
+					if (q != -1 && i - flushed < MIN_CHARS_PER_STATE * capacity)
+						return runNondeterministic(sets[q], s, i + 1);
+					flushed = i;
+				}
+			}
+			if (q == -1)
+				return false;
+			p = q;
+		}
+		return accept[p];
+	}
+
+	/**
+	 * Returns the number of times the cache has been cleared.
+	 */
+	public int getCacheFlushes() {
+		return flushes;
+	}
+
+	/**
+	 * Returns the number of currently cached deterministic states.
+	 */
+	public int getNumberOfCachedStates() {
+		return count;
+	}
+
+	/**
+	 * Computes, caches, and returns the transition from the given cached state on the
+	 * given char class. The cache may be cleared, in which case the returned state
+	 * is valid but the given one is not.
+	 */
+	private int computeTransition(int p, int c) {
+		char ch = points[c];
+		int[] set = step(sets[p], ch);
+		int k = points.length;
+		if (set == null) {
+			transitions[p * k + c] = -1;
+			return -1;
+		}
+		Integer q = cache.get(new StateSet(set));
+		if (q != null) {
+			transitions[p * k + c] = q;
+			return q;
+		}
+		if (count == capacity) {
+			flush();
+			return addState(set);
+		}
+		int r = addState(set);
+		transitions[p * k + c] = r;
+		return r;
+	}
+
+	/**
+	 * Returns the sorted set of nondeterministic states reached from the given set on the
+	 * given char, or null if empty.
+	 */
+	private int[] step(int[] set, char c) {
+		scratch.clear();
+		for (int s : set) {
+			char[] min = mins[s];
+			for (int j = 0; j < min.length && min[j] <= c; j++)
+				if (c <= maxs[s][j])
+					scratch.set(tos[s][j]);
+		}
+		if (scratch.isEmpty())
+			return null;
+		int[] r = new int[scratch.cardinality()];
+		for (int i = scratch.nextSetBit(0), j = 0; i >= 0; i = scratch.nextSetBit(i + 1))
+			r[j++] = i;
+		return r;
+	}
+
+	/**
+	 * Clears the cache, except for the initial state.
+	 */
+	private void flush() {
+		cache.clear();
+		count = 0;
+		flushes++;
+		addState(initialset);
+	}
+
+	/**
+	 * Adds a new cached state for the given set of nondeterministic states.
+	 */
+	private int addState(int[] set) {
+		int k = points.length;
+		if (count == sets.length) {
+			int n = Math.min(capacity, sets.length * 2);
+			sets = Arrays.copyOf(sets, n);
+			accept = Arrays.copyOf(accept, n);
+			transitions = Arrays.copyOf(transitions, n * k);
+		}
+		sets[count] = set;
+		accept[count] = false;
+		for (int s : set)
+			if (nfaaccept[s]) {
+				accept[count] = true;
+				break;
+			}
+		Arrays.fill(transitions, count * k, (count + 1) * k, UNKNOWN);
+		cache.put(new StateSet(set), count);
+		return count++;
+	}
+
+	/**
+	 * Runs the remaining input by nondeterministic simulation without caching.
+	 */
+	private boolean runNondeterministic(int[] set, CharSequence s, int offset) {
+		int l = s.length();
+		for (int i = offset; i < l; i++) {
+			set = step(set, s.charAt(i));
+			if (set == null)
+				return false;
+		}
+		for (int q : set)
+			if (nfaaccept[q])
+				return true;
+		return false;
+	}
+
+	/**
+	 * Sorted array of state numbers, used as hash key.
+	 */
+	static class StateSet {
+
+		final int[] states;
+		final int hash;
+
+		StateSet(int[] states) {
+			this.states = states;
+			hash = Arrays.hashCode(states);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof StateSet && Arrays.equals(states, ((StateSet)obj).states);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
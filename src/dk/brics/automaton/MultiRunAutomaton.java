@@ -0,0 +1,202 @@
+/*
+ * dk.brics.automaton
+ *
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finite-state automaton with fast run operation that matches a list of
+ * patterns simultaneously and reports which of them accept the input.
+ * <p>
+ * The automaton is the deterministic product of the given automata, where each
+ * state records the numbers of the patterns that accept at that state. A state is
+ * an accept state (see {@link #isAccept(int)}) if at least one pattern accepts.
+ * Running the automaton therefore reads the input once, no matter how many patterns
+ * are given.
+ */
+public class MultiRunAutomaton extends RunAutomaton {
+
+	static final long serialVersionUID = 50001;
+
+	private static final int[] NO_MATCHES = new int[0];
+
+	int patterns;
+	int[][] matches; // sorted pattern numbers accepted in each state
+
+	/**
+	 * Constructs a new <code>MultiRunAutomaton</code> from a list of automata.
+	 * Same as <code>MultiRunAutomaton(automata, RunAutomaton.ALPHABET_TABLE)</code>.
+	 * @param automata list of automata, pattern <i>i</i> being the <i>i</i>'th automaton
+	 */
+	public MultiRunAutomaton(List<Automaton> automata) {
+		this(automata, ALPHABET_TABLE);
+	}
+
+	/**
+	 * Constructs a new <code>MultiRunAutomaton</code> from a list of automata.
+	 * The given automata are not modified.
+	 * <p>
+	 * Complexity: exponential in the total number of states.
+	 * @param automata list of automata, pattern <i>i</i> being the <i>i</i>'th automaton
+	 * @param alphabet alphabet representation, see {@link RunAutomaton#RunAutomaton(Automaton, int)}
+	 */
+	public MultiRunAutomaton(List<Automaton> automata, int alphabet) {
+		this(product(automata), alphabet, automata.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	private MultiRunAutomaton(Automaton a, int alphabet, int patterns) {
+		super(a, alphabet);
+		this.patterns = patterns;
+		Map<State, int[]> m = (Map<State, int[]>)a.info;
+		matches = new int[size][];
+		for (Map.Entry<State, int[]> e : m.entrySet())
+			matches[e.getKey().number] = e.getValue();
+	}
+
+	@Override
+	void renumber(int[] order) {
+		super.renumber(order);
+		int[][] m = new int[size][];
+		for (int i = 0; i < size; i++)
+			m[i] = matches[order[i]];
+		matches = m;
+	}
+
+	/**
+	 * Builds the deterministic product automaton of the given automata, using the 
+	 * subset construction of {@link BasicOperations#determinize(Automaton)} from the
+	 * set of their initial states.
+	 * The pattern numbers of each state are stored as a map in the <code>info</code> field.
+	 */
+	static Automaton product(List<Automaton> automata) {
+		Automaton a = new Automaton();
+		Set<State> initialset = new HashSet<State>();
+		List<Set<State>> accepts = new ArrayList<Set<State>>(); // accept states, by pattern
+		for (Automaton b : automata) {
+			b = b.cloneExpanded();
+			initialset.add(b.initial);
+			accepts.add(b.getAcceptStates());
+		}
+		BasicOperations.SubsetConstruction c = new BasicOperations.SubsetConstruction(a, initialset, null);
+		int[] owner = new int[c.accept.length]; // pattern of each accept state, by state number
+		for (int i = 0; i < accepts.size(); i++)
+			for (State q : accepts.get(i))
+				owner[q.number] = i;
+		c.run();
+		Map<BitSet, int[]> shared = new HashMap<BitSet, int[]>();
+		Map<State, int[]> tags = new HashMap<State, int[]>();
+		BitSet ids = new BitSet();
+		for (int id = 0; id < c.subsets.size; id++) {
+			if (!c.states[id].accept)
+				continue;
+			ids.clear();
+			for (int q : c.subsets.sets[id])
+				if (c.accept[q])
+					ids.set(owner[q]);
+			int[] m = shared.get(ids);
+			if (m == null) {
+				m = new int[ids.cardinality()];
+				for (int j = ids.nextSetBit(0), k = 0; j >= 0; j = ids.nextSetBit(j + 1))
+					m[k++] = j;
+				shared.put((BitSet)ids.clone(), m);
+			}
+			tags.put(c.states[id], m);
+		}
+		a.info = tags;
+		return a;
+	}
+
+	/**
+	 * Returns the number of patterns.
+	 */
+	public int getNumberOfPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * Returns the numbers of the patterns that accept in the given state.
+	 * @param state a state
+	 * @return sorted array of pattern numbers, empty if the state is not an accept state
+	 */
+	public int[] getMatches(int state) {
+		int[] m = matches[state];
+		if (m == null)
+			return NO_MATCHES;
+		return m.clone();
+	}
+
+	/**
+	 * Returns the numbers of the patterns that accept the given string.
+	 * @param s a string
+	 * @return sorted array of pattern numbers, empty if no pattern accepts the string
+	 */
+	public int[] match(CharSequence s) {
+		int p = runToState(s);
+		if (p == -1)
+			return NO_MATCHES;
+		return getMatches(p);
+	}
+
+	/**
+	 * Finds the patterns that accept the given string.
+	 * This method does not allocate any objects.
+	 * @param s a string
+	 * @param result bit set that is cleared and then has the bits of the accepting patterns set
+	 * @return true if at least one pattern accepts the string
+	 */
+	public boolean match(CharSequence s, BitSet result) {
+		result.clear();
+		int p = runToState(s);
+		if (p == -1 || matches[p] == null)
+			return false;
+		for (int k : matches[p])
+			result.set(k);
+		return true;
+	}
+
+	/**
+	 * Returns the state reached by running the given string, or -1 if none.
+	 */
+	private int runToState(CharSequence s) {
+		int p = initial;
+		int k = points.length;
+		int l = s.length();
+		for (int i = 0; i < l && p != -1; i++)
+			p = getTransition(p * k + getCharClass(s.charAt(i)));
+		return p;
+	}
+}
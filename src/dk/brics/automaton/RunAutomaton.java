@@ -29,13 +29,29 @@
 
 package dk.brics.automaton;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -46,24 +62,445 @@ public class RunAutomaton implements Serializable {
 
 	static final long serialVersionUID = 20001;
 
+	/**
+	 * Character classes are found by binary search in the char interval start points.
+	 * This needs no extra memory, but {@link #step(int, char)} takes time
+	 * logarithmic in the number of intervals.
+	 * @see #RunAutomaton(Automaton, int)
+	 */
+	public static final int ALPHABET_SEARCH = 0;
+
+	/**
+	 * Character classes are found in a table with one entry per char.
+	 * This is the fastest option, but the table occupies 64-128 KB per automaton.
+	 * Automata with at most 512 states also get a transition table for the ASCII 
+	 * chars, of 128 or 256 bytes per state.
+	 * @see #RunAutomaton(Automaton, int)
+	 */
+	public static final int ALPHABET_TABLE = 1;
+
+	/**
+	 * Character classes are found in a two-level table of 256-char pages where
+	 * identical pages are stored only once. The table typically occupies a few KB,
+	 * in return for one extra memory access per char.
+	 * @see #RunAutomaton(Automaton, int)
+	 */
+	public static final int ALPHABET_PAGED = 2;
+
+	/** Flag for states that are not sinks, see {@link #setSinks()}. */
+	static final byte SINK_NONE = 0;
+
+	/** Flag for dead states, from which no accept state can be reached. */
+	static final byte SINK_REJECT = 1;
+
+	/** Flag for accept states from which only accept states can be reached on every char. */
+	static final byte SINK_ACCEPT = 2;
+
+	/** Maximum number of states for which an ASCII transition table is made, see {@link #setAsciiTransitions()}. */
+	static final int ASCII_TABLE_MAX_STATES = 512;
+
+	/**
+	 * States are numbered in the order given by the automaton.
+	 * @see #RunAutomaton(Automaton, int, int)
+	 */
+	public static final int ORDER_DEFAULT = 0;
+
+	/**
+	 * States are numbered in breadth-first order from the initial state, 
+	 * so that states reached after few chars have nearby rows in the transition table.
+	 * @see #RunAutomaton(Automaton, int, int)
+	 */
+	public static final int ORDER_BFS = 1;
+
+	/** Number of entries before the end of the compressed table that are searched for room for a row, see {@link #compress()}. */
+	static final int PACK_WINDOW = 1024;
+
+	/** Magic number identifying the flat format, see {@link #storeFlat(OutputStream)}. */
+	static final int FLAT_MAGIC = 0x42524441; // "BRDA"
+
+	/** Version of the flat format written by {@link #storeFlat(OutputStream)}. */
+	static final int FLAT_VERSION = 1;
+
 	int size;
 	boolean[] accept;
 	int initial;
 	int[] transitions; // delta(state,c) = transitions[state*points.length + getCharClass(c)]
+	short[] transitions16; // used instead of transitions if size <= 32768
+	byte[] transitions8; // used instead of transitions16 if size <= 128
+	int[] rowbase; // delta(state,c) = combnext[rowbase[state]+c] if combcheck[rowbase[state]+c] == c, else -1; used if the table is compressed
+	int[] combnext;
+	char[] combcheck; // 0xffff for unused entries
 	char[] points; // char interval start points
-	int[] classmap; // map from char number to class class
+	int[] classmap; // map from char number to class, only set when reading streams written by earlier versions
+	char[] classmap16; // map from char number to class
+	byte[] classmap8; // used instead of classmap16 if points.length <= 256 (unsigned)
+	char[] pageindex; // map from high byte of char to offset of page in classpages
+	char[] classpages; // pages mapping low byte of char to class
+	byte[] classpages8; // used instead of classpages if points.length <= 256 (unsigned)
+	transient byte[] sinks; // SINK_NONE, SINK_REJECT, or SINK_ACCEPT for each state
+	transient volatile boolean sinksfound; // false if sinks is all SINK_NONE because detection was skipped
+	transient ByteBuffer mapped; // flat transition table, used if all transition arrays are null
+	transient byte[] ascii8; // delta(state,c) = ascii8[state*128 + c] for c < 128, used with transitions8
+	transient short[] ascii16; // used instead of ascii8 with transitions16
+	transient String prefix; // common prefix of all accepted strings, see setPrefix
+	transient int prefixstate; // state reached by reading prefix
+	transient long[] startclasses; // bitmap of char classes with transitions from the initial state, null if any, see setPrefix
+	transient RunAutomaton starts; // automaton for the reversed language preceded by any string, see getStartAutomaton
+
+	/**
+	 * Sets the transition table, using the narrowest representation that can
+	 * hold all state numbers.
+	 */
+	void setTransitions(int[] table) {
+		transitions = null;
+		transitions16 = null;
+		transitions8 = null;
+		rowbase = null;
+		combnext = null;
+		combcheck = null;
+		if (size <= Byte.MAX_VALUE + 1) {
+			transitions8 = new byte[table.length];
+			for (int n = 0; n < table.length; n++)
+				transitions8[n] = (byte)table[n];
+		} else if (size <= Short.MAX_VALUE + 1) {
+			transitions16 = new short[table.length];
+			for (int n = 0; n < table.length; n++)
+				transitions16[n] = (short)table[n];
+		} else
+			transitions = table;
+	}
+
+	/**
+	 * Sets the ASCII transition table, which gives the transitions on the chars 0-127
+	 * directly, without looking up the char classes. The table is only made for
+	 * automata using {@link #ALPHABET_TABLE}, with at most {@link #ASCII_TABLE_MAX_STATES} 
+	 * states and a transition table on the heap, so that it occupies at most 128 KB.
+	 */
+	void setAsciiTransitions() {
+		ascii8 = null;
+		ascii16 = null;
+		if (size > ASCII_TABLE_MAX_STATES || (transitions8 == null && transitions16 == null)
+				|| (classmap8 == null && classmap16 == null))
+			return;
+		int k = points.length;
+		if (transitions8 != null)
+			ascii8 = new byte[size * 128];
+		else
+			ascii16 = new short[size * 128];
+		for (int n = 0; n < size; n++)
+			for (char c = 0; c < 128; c++) {
+				int q = getTransition(n * k + getCharClass(c));
+				if (ascii8 != null)
+					ascii8[n * 128 + c] = (byte)q;
+				else
+					ascii16[n * 128 + c] = (short)q;
+			}
+	}
+
+	/**
+	 * Finds the sink states. A state is a rejecting sink if no accept state
+	 * is reachable from it, and an accepting sink if every string is accepted from it.
+	 * Running can stop as soon as a sink is entered.
+	 */
+	void setSinks() {
+		int k = points.length;
+		// predecessors, by target state
+		int[] first = new int[size + 1];
+		for (int n = 0; n < size * k; n++) {
+			int q = getTransition(n);
+			if (q != -1)
+				first[q + 1]++;
+		}
+		for (int q = 0; q < size; q++)
+			first[q + 1] += first[q];
+		int[] pred = new int[first[size]];
+		int[] next = first.clone();
+		boolean[] total = new boolean[size];
+		for (int n = 0; n < size; n++) {
+			total[n] = true;
+			for (int c = 0; c < k; c++) {
+				int q = getTransition(n * k + c);
+				if (q != -1)
+					pred[next[q]++] = n;
+				else
+					total[n] = false;
+			}
+		}
+		// live states reach an accept state
+		boolean[] live = new boolean[size];
+		int[] worklist = new int[size];
+		int w = 0;
+		for (int n = 0; n < size; n++)
+			if (accept[n]) {
+				live[n] = true;
+				worklist[w++] = n;
+			}
+		while (w > 0) {
+			int q = worklist[--w];
+			for (int j = first[q]; j < first[q + 1]; j++)
+				if (!live[pred[j]]) {
+					live[pred[j]] = true;
+					worklist[w++] = pred[j];
+				}
+		}
+		// universal states are accept states with transitions on all chars to universal states
+		boolean[] universal = new boolean[size];
+		for (int n = 0; n < size; n++) {
+			universal[n] = accept[n] && total[n];
+			if (!universal[n])
+				worklist[w++] = n;
+		}
+		while (w > 0) {
+			int q = worklist[--w];
+			for (int j = first[q]; j < first[q + 1]; j++)
+				if (universal[pred[j]]) {
+					universal[pred[j]] = false;
+					worklist[w++] = pred[j];
+				}
+		}
+		byte[] sk = new byte[size];
+		for (int n = 0; n < size; n++)
+			if (!live[n])
+				sk[n] = SINK_REJECT;
+			else if (universal[n])
+				sk[n] = SINK_ACCEPT;
+		sinks = sk;
+		sinksfound = true;
+	}
+
+	/**
+	 * Returns the sink flags, finding the sinks first if that was skipped by {@link #map(ByteBuffer, int)}.
+	 */
+	byte[] getSinks() {
+		if (!sinksfound)
+			setSinks();
+		return sinks;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (classmap != null) { // written by an earlier version, with int tables only
+			char[] map = new char[classmap.length];
+			for (int i = 0; i < map.length; i++)
+				map[i] = (char)classmap[i];
+			classmap = null;
+			if (points.length <= 256)
+				classmap8 = narrow(map);
+			else
+				classmap16 = map;
+		}
+		if (transitions != null && rowbase == null)
+			setTransitions(transitions);
+		setSinks();
+		setAsciiTransitions();
+		setPrefix();
+	}
+
+	/**
+	 * Returns the entry at the given index of the transition table.
+	 */
+	int getTransition(int n) {
+		if (transitions8 != null)
+			return transitions8[n];
+		if (transitions16 != null)
+			return transitions16[n];
+		if (transitions != null)
+			return transitions[n];
+		if (rowbase != null) {
+			int k = points.length;
+			int q = n / k;
+			return getPackedTransition(q, n - q * k);
+		}
+		return getMappedTransition(n);
+	}
+
+	/**
+	 * Returns the transition from the given state on the given char class in a compressed table.
+	 */
+	private int getPackedTransition(int state, int c) {
+		int i = rowbase[state] + c;
+		return combcheck[i] == c ? combnext[i] : -1;
+	}
+
+	/**
+	 * Compresses the transition table by row displacement. Identical rows
+	 * are stored once, and the distinct rows are overlaid in a single array such
+	 * that the defined transitions of different rows occupy different entries 
+	 * (the "comb-vector" packing used by scanner generators). Each entry records
+	 * its char class, so a transition is still found in constant time.
+	 * <p>
+	 * The table is only replaced if the compressed form is smaller. The ASCII
+	 * transition table is not used for compressed automata. This method modifies 
+	 * the automaton and must not be called while it is in use by other threads.
+	 * @return the compression ratio, that is, the size of the previous transition table 
+	 *         divided by the size of the compressed table (in bytes), or 1 if the table is not replaced
+	 */
+	public double compress() {
+		int k = points.length;
+		if (rowbase != null || k == Character.MAX_VALUE + 1) // the check value 0xffff must not be a class
+			return 1;
+		// find the distinct rows
+		Map<IntBuffer, Integer> ids = new HashMap<IntBuffer, Integer>();
+		List<int[]> rows = new ArrayList<int[]>();
+		int[] row = new int[size];
+		for (int n = 0; n < size; n++) {
+			int[] r = new int[k];
+			for (int c = 0; c < k; c++)
+				r[c] = getTransition(n * k + c);
+			IntBuffer key = IntBuffer.wrap(r);
+			Integer id = ids.get(key);
+			if (id == null) {
+				id = rows.size();
+				ids.put(key, id);
+				rows.add(r);
+			}
+			row[n] = id;
+		}
+		// place rows with most transitions first, each at the first position that fits
+		Integer[] order = new Integer[rows.size()];
+		final int[] count = new int[rows.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			for (int q : rows.get(i))
+				if (q != -1)
+					count[i]++;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer r1, Integer r2) {
+				return count[r2] - count[r1];
+			}
+		});
+		int[] base = new int[rows.size()];
+		BitSet bases = new BitSet();
+		int[] next = new int[k];
+		char[] check = new char[k];
+		Arrays.fill(check, (char)0xffff);
+		int free = 0; // all entries before free are used
+		// entries more than PACK_WINDOW before the end are not tried, which bounds the time per row
+		int length = 0;
+		for (int i : order) {
+			int[] r = rows.get(i);
+			int[] cs = new int[count[i]];
+			for (int c = 0, j = 0; c < k; c++)
+				if (r[c] != -1)
+					cs[j++] = c;
+			int b = cs.length > 0 ? Math.max(0, Math.max(free, length - PACK_WINDOW) - cs[0]) : 0;
+			while (true) {
+				b = bases.nextClearBit(b);
+				boolean fits = true;
+				for (int j = 0; j < cs.length && fits; j++)
+					if (b + cs[j] < check.length && check[b + cs[j]] != 0xffff)
+						fits = false;
+				if (fits)
+					break;
+				b++;
+			}
+			bases.set(b);
+			base[i] = b;
+			if (b + k > check.length) {
+				int n = Math.max(b + k, check.length * 2);
+				next = Arrays.copyOf(next, n);
+				int m = check.length;
+				check = Arrays.copyOf(check, n);
+				Arrays.fill(check, m, n, (char)0xffff);
+			}
+			for (int c : cs) {
+				next[b + c] = r[c];
+				check[b + c] = (char)c;
+			}
+			length = Math.max(length, b + k);
+			while (free < check.length && check[free] != 0xffff)
+				free++;
+		}
+		long before = (long)size * k * (size <= Byte.MAX_VALUE + 1 ? 1 : size <= Short.MAX_VALUE + 1 ? 2 : 4);
+		long after = 4L * size + 6L * length;
+		if (after >= before)
+			return 1;
+		int[] b = new int[size];
+		for (int n = 0; n < size; n++)
+			b[n] = base[row[n]];
+		transitions = null;
+		transitions16 = null;
+		transitions8 = null;
+		mapped = null;
+		rowbase = b;
+		combnext = Arrays.copyOf(next, length);
+		combcheck = Arrays.copyOf(check, length);
+		setAsciiTransitions();
+		return (double)before / after;
+	}
+
+	/**
+	 * Returns the entry at the given index of the mapped transition table.
+	 * The entry width follows the same rule as {@link #setTransitions(int[])}.
+	 */
+	private int getMappedTransition(int n) {
+		if (size <= Byte.MAX_VALUE + 1)
+			return mapped.get(n);
+		if (size <= Short.MAX_VALUE + 1)
+			return mapped.getShort(n << 1);
+		return mapped.getInt(n << 2);
+	}
 
 	/** 
 	 * Sets alphabet table for optimal run performance. 
 	 */
 	void setAlphabet() {
-		classmap = new int[Character.MAX_VALUE - Character.MIN_VALUE + 1];
+		char[] map = new char[Character.MAX_VALUE - Character.MIN_VALUE + 1];
 		int i = 0;
 		for (int j = 0; j <= Character.MAX_VALUE - Character.MIN_VALUE; j++) {
 			if (i + 1 < points.length && j == points[i + 1])
 				i++;
-			classmap[j] = i;
+			map[j] = (char)i;
 		}
+		if (points.length <= 256)
+			classmap8 = narrow(map);
+		else
+			classmap16 = map;
+	}
+
+	/**
+	 * Sets paged alphabet table, sharing pages with identical contents.
+	 */
+	void setPagedAlphabet() {
+		pageindex = new char[256];
+		Map<String, Integer> offsets = new HashMap<String, Integer>();
+		char[] pages = new char[256 * 256];
+		char[] page = new char[256];
+		int n = 0;
+		int i = 0;
+		for (int p = 0; p < 256; p++) {
+			for (int j = 0; j < 256; j++) {
+				if (i + 1 < points.length && ((p << 8) | j) == points[i + 1])
+					i++;
+				page[j] = (char)i;
+			}
+			String key = new String(page);
+			Integer offset = offsets.get(key);
+			if (offset == null) {
+				offset = n;
+				offsets.put(key, offset);
+				System.arraycopy(page, 0, pages, n, 256);
+				n += 256;
+			}
+			pageindex[p] = (char)offset.intValue();
+		}
+		classpages = new char[n];
+		System.arraycopy(pages, 0, classpages, 0, n);
+		if (points.length <= 256) {
+			classpages8 = narrow(classpages);
+			classpages = null;
+		}
+	}
+
+	/**
+	 * Converts character classes less than 256 to unsigned bytes.
+	 */
+	private static byte[] narrow(char[] classes) {
+		byte[] b = new byte[classes.length];
+		for (int n = 0; n < classes.length; n++)
+			b[n] = (byte)classes[n];
+		return b;
 	}
 
 	/** 
@@ -80,7 +517,7 @@ public class RunAutomaton implements Serializable {
 			else
 				b.append(" [reject]:\n");
 			for (int j = 0; j < points.length; j++) {
-				int k = transitions[i * points.length + j];
+				int k = getTransition(i * points.length + j);
 				if (k != -1) {
 					char min = points[j];
 					char max;
@@ -115,6 +552,23 @@ public class RunAutomaton implements Serializable {
 		return accept[state];
 	}
 
+	/**
+	 * Returns true if no accept state can be reached from the given state,
+	 * so that no string is accepted from it.
+	 * For an automaton obtained from {@link #map(ByteBuffer, int)}, the first call reads the whole transition table.
+	 */
+	public boolean isDead(int state) {
+		return getSinks()[state] == SINK_REJECT;
+	}
+
+	/**
+	 * Returns true if every string is accepted from the given state.
+	 * For an automaton obtained from {@link #map(ByteBuffer, int)}, the first call reads the whole transition table.
+	 */
+	public boolean isAcceptSink(int state) {
+		return getSinks()[state] == SINK_ACCEPT;
+	}
+
 	/** 
 	 * Returns initial state. 
 	 */
@@ -134,6 +588,16 @@ public class RunAutomaton implements Serializable {
 	 * Gets character class of given char. 
 	 */
 	int getCharClass(char c) {
+		if (classmap8 != null)
+			return classmap8[c - Character.MIN_VALUE] & 0xff;
+		if (classmap16 != null)
+			return classmap16[c - Character.MIN_VALUE];
+		if (pageindex != null) {
+			int i = pageindex[c >>> 8] | (c & 0xff);
+			if (classpages8 != null)
+				return classpages8[i] & 0xff;
+			return classpages[i];
+		}
 		return SpecialOperations.findIndex(c, points);
 	}
 
@@ -183,6 +647,161 @@ public class RunAutomaton implements Serializable {
 		s.flush();
 	}
 
+	/**
+	 * Writes this <code>RunAutomaton</code> to the given stream in a flat binary format.
+	 * Unlike {@link #store(OutputStream)}, the result can be used in place by 
+	 * {@link #map(ByteBuffer, int)}, for example from a memory-mapped file.
+	 * <p>
+	 * The format consists of a header of six 32-bit big-endian integers
+	 * (magic number, format version, number of states, initial state, number of
+	 * char intervals, and width in bytes of transition table entries),
+	 * followed by the char interval start points as 16-bit integers, a bitmap of the
+	 * accept states, padding to a multiple of 8 bytes, and finally the transition
+	 * table with -1 for missing transitions.
+	 * @param stream output stream
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public void storeFlat(OutputStream stream) throws IOException {
+		DataOutputStream s = new DataOutputStream(new BufferedOutputStream(stream));
+		int width = getFlatWidth(size);
+		s.writeInt(FLAT_MAGIC);
+		s.writeInt(FLAT_VERSION);
+		s.writeInt(size);
+		s.writeInt(initial);
+		s.writeInt(points.length);
+		s.writeInt(width);
+		for (char c : points)
+			s.writeChar(c);
+		for (int i = 0; i < size; i += 8) {
+			int b = 0;
+			for (int j = 0; j < 8 && i + j < size; j++)
+				if (accept[i + j])
+					b |= 1 << j;
+			s.writeByte(b);
+		}
+		while (s.size() % 8 != 0)
+			s.writeByte(0);
+		for (int n = 0; n < size * points.length; n++) {
+			int q = getTransition(n);
+			if (width == 1)
+				s.writeByte(q);
+			else if (width == 2)
+				s.writeShort(q);
+			else
+				s.writeInt(q);
+		}
+		s.flush();
+	}
+
+	/**
+	 * Returns the width in bytes of transition table entries for the given number of states.
+	 */
+	private static int getFlatWidth(int size) {
+		if (size <= Byte.MAX_VALUE + 1)
+			return 1;
+		if (size <= Short.MAX_VALUE + 1)
+			return 2;
+		return 4;
+	}
+
+	/**
+	 * Constructs a <code>RunAutomaton</code> from the flat binary format in the given file,
+	 * which is memory-mapped. Same as <code>map(b, RunAutomaton.ALPHABET_PAGED)</code>
+	 * where <code>b</code> maps the file.
+	 * @param file file written by {@link #storeFlat(OutputStream)}
+	 * @exception IOException if input/output related exception occurs, or if the 
+	 *            file is not in the flat format
+	 */
+	public static RunAutomaton map(File file) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(file, "r");
+		try {
+			FileChannel c = f.getChannel();
+			return map(c.map(FileChannel.MapMode.READ_ONLY, 0, c.size()), ALPHABET_PAGED);
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Constructs a <code>RunAutomaton</code> from the flat binary format in the given buffer.
+	 * The contents are read from the buffer's current position.
+	 * The transition table is not copied but used directly from the buffer,
+	 * so the buffer contents must not be modified while the automaton is in use.
+	 * Only the char intervals and the accept states are read into the heap.
+	 * Sink states are not detected, so running does not stop early when one is entered.
+	 * The header is validated, but the entries of the transition table are not, as that would read the whole table.
+	 * @param buf buffer containing data written by {@link #storeFlat(OutputStream)}
+	 * @param alphabet alphabet representation, see {@link #RunAutomaton(Automaton, int)}
+	 * @exception IOException if the buffer is not in the flat format, is truncated, or has an unsupported version
+	 */
+	public static RunAutomaton map(ByteBuffer buf, int alphabet) throws IOException {
+		if (alphabet < ALPHABET_SEARCH || alphabet > ALPHABET_PAGED)
+			throw new IllegalArgumentException("unknown alphabet representation: " + alphabet);
+		ByteBuffer b = buf.slice();
+		if (b.remaining() < 24 || b.getInt(0) != FLAT_MAGIC)
+			throw new IOException("not a flat RunAutomaton");
+		int version = b.getInt(4);
+		if (version < 1 || version > FLAT_VERSION)
+			throw new IOException("unsupported flat RunAutomaton version: " + version);
+		RunAutomaton a = new RunAutomaton();
+		a.size = b.getInt(8);
+		a.initial = b.getInt(12);
+		int n = b.getInt(16);
+		int width = b.getInt(20);
+		if (a.size < 1 || a.initial < 0 || a.initial >= a.size || n < 1 || n > Character.MAX_VALUE + 1 
+				|| width != getFlatWidth(a.size))
+			throw new IOException("corrupt flat RunAutomaton");
+		long offset = 24 + 2L * n + (((long)a.size + 7) >> 3);
+		offset = (offset + 7) & ~7L;
+		long length = (long)a.size * n * width;
+		if (b.remaining() < offset + length)
+			throw new IOException("truncated flat RunAutomaton");
+		a.points = new char[n];
+		for (int i = 0; i < n; i++) {
+			a.points[i] = b.getChar(24 + 2 * i);
+			if (i == 0 ? a.points[0] != 0 : a.points[i] <= a.points[i - 1])
+				throw new IOException("corrupt flat RunAutomaton");
+		}
+		int acceptoffset = 24 + 2 * n;
+		a.accept = new boolean[a.size];
+		for (int i = 0; i < a.size; i++)
+			a.accept[i] = (b.get(acceptoffset + (i >> 3)) & (1 << (i & 7))) != 0;
+		b.position((int)offset);
+		b.limit((int)(offset + length));
+		a.mapped = b.slice();
+		if (alphabet == ALPHABET_TABLE)
+			a.setAlphabet();
+		else if (alphabet == ALPHABET_PAGED)
+			a.setPagedAlphabet();
+		a.sinks = new byte[a.size];
+		a.setPrefix();
+		return a;
+	}
+
+	/**
+	 * Replaces a mapped automaton by one with the transition table on the heap
+	 * when serialized.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		if (mapped == null)
+			return this;
+		RunAutomaton a = new RunAutomaton();
+		a.size = size;
+		a.accept = accept;
+		a.initial = initial;
+		a.points = points;
+		a.classmap16 = classmap16;
+		a.classmap8 = classmap8;
+		a.pageindex = pageindex;
+		a.classpages = classpages;
+		a.classpages8 = classpages8;
+		int[] table = new int[size * points.length];
+		for (int n = 0; n < table.length; n++)
+			table[n] = getMappedTransition(n);
+		a.setTransitions(table);
+		return a;
+	}
+
 	/**
 	 * Constructs a new <code>RunAutomaton</code> from a deterministic
 	 * <code>Automaton</code>. If the given automaton is not deterministic,
@@ -192,27 +811,185 @@ public class RunAutomaton implements Serializable {
 	 *                 method faster in return of a higher memory usage
 	 */
 	public RunAutomaton(Automaton a, boolean tableize) {
-		a.determinize();
+		this(a, tableize ? ALPHABET_TABLE : ALPHABET_SEARCH);
+	}
+
+	/**
+	 * Constructs a new <code>RunAutomaton</code> from a deterministic
+	 * <code>Automaton</code>, using the given representation of the alphabet.
+	 * If the given automaton is not deterministic, it is determinized first.
+	 * @param a an automaton
+	 * @param alphabet one of {@link #ALPHABET_SEARCH}, {@link #ALPHABET_TABLE}, 
+	 *                 and {@link #ALPHABET_PAGED}
+	 * @exception IllegalArgumentException if <code>alphabet</code> is not a valid alphabet representation
+	 */
+	public RunAutomaton(Automaton a, int alphabet) {
+		this(a, alphabet, ORDER_DEFAULT);
+	}
+
+	/**
+	 * Constructs a new <code>RunAutomaton</code> from a deterministic
+	 * <code>Automaton</code>, using the given representation of the alphabet
+	 * and numbering of the states.
+	 * If the given automaton is not deterministic, it is determinized first.
+	 * @param a an automaton
+	 * @param alphabet one of {@link #ALPHABET_SEARCH}, {@link #ALPHABET_TABLE}, 
+	 *                 and {@link #ALPHABET_PAGED}
+	 * @param order one of {@link #ORDER_DEFAULT} and {@link #ORDER_BFS}
+	 * @exception IllegalArgumentException if <code>alphabet</code> is not a valid alphabet representation
+	 *            or <code>order</code> is not a valid state order
+	 * @see #reorder(Iterable)
+	 */
+	public RunAutomaton(Automaton a, int alphabet, int order) {
+		this(a, alphabet, order, null);
+	}
+
+	/**
+	 * Constructs a new <code>RunAutomaton</code> from a deterministic
+	 * <code>Automaton</code>, using the given representation of the alphabet
+	 * and numbering of the states.
+	 * If the given automaton is not deterministic, it is determinized first
+	 * within the given budget, see {@link BasicOperations#determinize(Automaton, DeterminizationBudget)}.
+	 * @param a an automaton
+	 * @param alphabet one of {@link #ALPHABET_SEARCH}, {@link #ALPHABET_TABLE}, 
+	 *                 and {@link #ALPHABET_PAGED}
+	 * @param order one of {@link #ORDER_DEFAULT} and {@link #ORDER_BFS}
+	 * @param budget limits on determinization, null for no limits
+	 * @exception IllegalArgumentException if <code>alphabet</code> is not a valid alphabet representation
+	 *            or <code>order</code> is not a valid state order
+	 * @exception DeterminizationLimitException if a limit of the budget is exceeded
+	 */
+	public RunAutomaton(Automaton a, int alphabet, int order, DeterminizationBudget budget) {
+		if (order != ORDER_DEFAULT && order != ORDER_BFS)
+			throw new IllegalArgumentException("unknown state order: " + order);
+		if (alphabet < ALPHABET_SEARCH || alphabet > ALPHABET_PAGED)
+			throw new IllegalArgumentException("unknown alphabet representation: " + alphabet);
+		if (budget != null)
+			a.determinize(budget);
+		else
+			a.determinize();
 		points = a.getStartPoints();
 		Set<State> states = a.getStates();
 		Automaton.setStateNumbers(states);
 		initial = a.initial.number;
 		size = states.size();
 		accept = new boolean[size];
-		transitions = new int[size * points.length];
+		int[] table = new int[size * points.length];
 		for (int n = 0; n < size * points.length; n++)
-			transitions[n] = -1;
+			table[n] = -1;
 		for (State s : states) {
 			int n = s.number;
 			accept[n] = s.accept;
 			for (int c = 0; c < points.length; c++) {
 				State q = s.step(points[c]);
 				if (q != null)
-					transitions[n * points.length + c] = q.number;
+					table[n * points.length + c] = q.number;
 			}
 		}
-		if (tableize)
+		setTransitions(table);
+		if (alphabet == ALPHABET_TABLE)
 			setAlphabet();
+		else if (alphabet == ALPHABET_PAGED)
+			setPagedAlphabet();
+		if (order == ORDER_BFS)
+			renumber(getBreadthFirstOrder());
+		setSinks();
+		setAsciiTransitions();
+		setPrefix();
+	}
+
+	/**
+	 * Renumbers the states by how often they are visited when running the given
+	 * sample inputs, so that the rows of the most frequently used states are 
+	 * adjacent at the start of the transition table. States with equal counts 
+	 * are numbered in breadth-first order. The language of the automaton is not
+	 * changed, but state numbers (as used by {@link #step(int, char)}) are.
+	 * <p>
+	 * This method modifies the automaton and must not be called while it is in use
+	 * by other threads. A mapped automaton (see {@link #map(File)}) gets its 
+	 * transition table copied to the heap.
+	 * @param samples representative inputs
+	 */
+	public void reorder(Iterable<? extends CharSequence> samples) {
+		final long[] visits = new long[size];
+		int k = points.length;
+		for (CharSequence s : samples) {
+			int p = initial;
+			visits[p]++;
+			for (int i = 0, l = s.length(); i < l; i++) {
+				p = getTransition(p * k + getCharClass(s.charAt(i)));
+				if (p == -1)
+					break;
+				visits[p]++;
+			}
+		}
+		int[] bfs = getBreadthFirstOrder();
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++)
+			order[i] = bfs[i];
+		// stable, so breadth-first order is kept for equal counts
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer q1, Integer q2) {
+				return Long.compare(visits[q2], visits[q1]);
+			}
+		});
+		int[] perm = new int[size];
+		for (int i = 0; i < size; i++)
+			perm[i] = order[i];
+		renumber(perm);
+		setSinks();
+		setAsciiTransitions();
+	}
+
+	/**
+	 * Returns the states in breadth-first order from the initial state, followed
+	 * by any unreachable states.
+	 */
+	int[] getBreadthFirstOrder() {
+		int k = points.length;
+		int[] order = new int[size];
+		boolean[] seen = new boolean[size];
+		int n = 0;
+		order[n++] = initial;
+		seen[initial] = true;
+		for (int i = 0; i < n; i++)
+			for (int c = 0; c < k; c++) {
+				int q = getTransition(order[i] * k + c);
+				if (q != -1 && !seen[q]) {
+					seen[q] = true;
+					order[n++] = q;
+				}
+			}
+		for (int q = 0; q < size; q++)
+			if (!seen[q])
+				order[n++] = q;
+		return order;
+	}
+
+	/**
+	 * Renumbers the states such that state <code>order[i]</code> gets number <code>i</code>.
+	 * The transition table is rebuilt on the heap. Derived tables that depend on
+	 * the state numbers must be rebuilt by the caller.
+	 */
+	void renumber(int[] order) {
+		int k = points.length;
+		int[] number = new int[size];
+		for (int i = 0; i < size; i++)
+			number[order[i]] = i;
+		int[] table = new int[size * k];
+		boolean[] acc = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			acc[i] = accept[order[i]];
+			for (int c = 0; c < k; c++) {
+				int q = getTransition(order[i] * k + c);
+				table[i * k + c] = q == -1 ? -1 : number[q];
+			}
+		}
+		accept = acc;
+		initial = number[initial];
+		mapped = null;
+		setTransitions(table);
+		setPrefix();
 	}
 
 	/**
@@ -223,10 +1000,15 @@ public class RunAutomaton implements Serializable {
 	 * transition function.)
 	 */
 	public int step(int state, char c) {
-		if (classmap == null)
-			return transitions[state * points.length + getCharClass(c)];
-		else
-			return transitions[state * points.length + classmap[c - Character.MIN_VALUE]];
+		if (c < 128) {
+			if (ascii8 != null)
+				return ascii8[(state << 7) | c];
+			if (ascii16 != null)
+				return ascii16[(state << 7) | c];
+		}
+		if (rowbase != null)
+			return getPackedTransition(state, getCharClass(c));
+		return getTransition(state * points.length + getCharClass(c));
 	}
 
 	/** 
@@ -235,10 +1017,267 @@ public class RunAutomaton implements Serializable {
 	public boolean run(String s) {
 		int p = initial;
 		int l = s.length();
-		for (int i = 0; i < l; i++) {
-			p = step(p, s.charAt(i));
-			if (p == -1)
-				return false;
+		int k = points.length;
+		byte[] sk = sinks;
+		if (ascii8 != null) {
+			byte[] a = ascii8;
+			byte[] t = transitions8;
+			for (int i = 0; i < l; i++) {
+				char c = s.charAt(i);
+				p = c < 128 ? a[(p << 7) | c] : t[p * k + getCharClass(c)];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (ascii16 != null) {
+			short[] a = ascii16;
+			short[] t = transitions16;
+			for (int i = 0; i < l; i++) {
+				char c = s.charAt(i);
+				p = c < 128 ? a[(p << 7) | c] : t[p * k + getCharClass(c)];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (transitions8 != null) {
+			byte[] t = transitions8;
+			for (int i = 0; i < l; i++) {
+				p = t[p * k + getCharClass(s.charAt(i))];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (transitions16 != null) {
+			short[] t = transitions16;
+			for (int i = 0; i < l; i++) {
+				p = t[p * k + getCharClass(s.charAt(i))];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (transitions != null) {
+			int[] t = transitions;
+			for (int i = 0; i < l; i++) {
+				p = t[p * k + getCharClass(s.charAt(i))];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (rowbase != null) {
+			int[] base = rowbase;
+			int[] next = combnext;
+			char[] check = combcheck;
+			for (int i = 0; i < l; i++) {
+				int c = getCharClass(s.charAt(i));
+				int j = base[p] + c;
+				if (check[j] != c)
+					return false;
+				p = next[j];
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else {
+			for (int i = 0; i < l; i++) {
+				p = getMappedTransition(p * k + getCharClass(s.charAt(i)));
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		}
+		return accept[p];
+	}
+
+	/**
+	 * Runs this automaton on each of the given inputs. 
+	 * This is equivalent to invoking {@link #run(String)} on each input.
+	 * @param inputs the strings to run
+	 * @param results array where <code>results[i]</code> is set to true if
+	 *                <code>inputs[i]</code> is accepted and false otherwise
+	 * @exception IllegalArgumentException if <code>results</code> is shorter than <code>inputs</code>
+	 */
+	public void run(CharSequence[] inputs, boolean[] results) {
+		if (results.length < inputs.length)
+			throw new IllegalArgumentException("results array is shorter than inputs array");
+		for (int i = 0; i < inputs.length; i++)
+			results[i] = finish(initial, inputs[i], 0);
+	}
+
+	/**
+	 * Runs this automaton on each of the given inputs.
+	 * This is equivalent to invoking {@link #run(String)} on each input.
+	 * @param inputs the strings to run
+	 * @param results bit set where bit <code>i</code> is set if the <code>i</code>'th input 
+	 *                is accepted and cleared otherwise
+	 */
+	public void run(List<? extends CharSequence> inputs, BitSet results) {
+		int i = 0;
+		for (CharSequence s : inputs)
+			results.set(i++, finish(initial, s, 0));
+	}
+
+	/**
+	 * Runs this automaton on each of the given inputs, advancing four inputs
+	 * at a time. The transition table lookups for the four inputs are
+	 * independent, so the latency of cache misses is overlapped. This may be
+	 * faster than {@link #run(CharSequence[], boolean[])} for automata
+	 * whose transition table does not fit in the cache.
+	 * @param inputs the strings to run
+	 * @param results array where <code>results[i]</code> is set to true if
+	 *                <code>inputs[i]</code> is accepted and false otherwise
+	 * @exception IllegalArgumentException if <code>results</code> is shorter than <code>inputs</code>
+	 */
+	public void runInterleaved(CharSequence[] inputs, boolean[] results) {
+		if (results.length < inputs.length)
+			throw new IllegalArgumentException("results array is shorter than inputs array");
+		int k = points.length;
+		byte[] sk = sinks;
+		int i = 0;
+		if (transitions8 != null || transitions16 != null) {
+			byte[] a8 = ascii8, t8 = transitions8;
+			short[] a16 = ascii16, t16 = transitions16;
+			for (; i + 4 <= inputs.length; i += 4) {
+				CharSequence s0 = inputs[i], s1 = inputs[i + 1], s2 = inputs[i + 2], s3 = inputs[i + 3];
+				int m = Math.min(Math.min(s0.length(), s1.length()), Math.min(s2.length(), s3.length()));
+				int p0 = initial, p1 = initial, p2 = initial, p3 = initial;
+				// lock step until the shortest input ends or all runs are dead or in sinks
+				int j = 0;
+				if (t8 != null)
+					for (; j < m; j++) {
+						boolean done = true;
+						if (p0 != -1 && sk[p0] == SINK_NONE) {
+							char c = s0.charAt(j);
+							p0 = c < 128 && a8 != null ? a8[(p0 << 7) | c] : t8[p0 * k + getCharClass(c)];
+							done = false;
+						}
+						if (p1 != -1 && sk[p1] == SINK_NONE) {
+							char c = s1.charAt(j);
+							p1 = c < 128 && a8 != null ? a8[(p1 << 7) | c] : t8[p1 * k + getCharClass(c)];
+							done = false;
+						}
+						if (p2 != -1 && sk[p2] == SINK_NONE) {
+							char c = s2.charAt(j);
+							p2 = c < 128 && a8 != null ? a8[(p2 << 7) | c] : t8[p2 * k + getCharClass(c)];
+							done = false;
+						}
+						if (p3 != -1 && sk[p3] == SINK_NONE) {
+							char c = s3.charAt(j);
+							p3 = c < 128 && a8 != null ? a8[(p3 << 7) | c] : t8[p3 * k + getCharClass(c)];
+							done = false;
+						}
+						if (done)
+							break;
+					}
+				else
+					for (; j < m; j++) {
+						boolean done = true;
+						if (p0 != -1 && sk[p0] == SINK_NONE) {
+							char c = s0.charAt(j);
+							p0 = c < 128 && a16 != null ? a16[(p0 << 7) | c] : t16[p0 * k + getCharClass(c)];
+							done = false;
+						}
+						if (p1 != -1 && sk[p1] == SINK_NONE) {
+							char c = s1.charAt(j);
+							p1 = c < 128 && a16 != null ? a16[(p1 << 7) | c] : t16[p1 * k + getCharClass(c)];
+							done = false;
+						}
+						if (p2 != -1 && sk[p2] == SINK_NONE) {
+							char c = s2.charAt(j);
+							p2 = c < 128 && a16 != null ? a16[(p2 << 7) | c] : t16[p2 * k + getCharClass(c)];
+							done = false;
+						}
+						if (p3 != -1 && sk[p3] == SINK_NONE) {
+							char c = s3.charAt(j);
+							p3 = c < 128 && a16 != null ? a16[(p3 << 7) | c] : t16[p3 * k + getCharClass(c)];
+							done = false;
+						}
+						if (done)
+							break;
+					}
+				results[i] = finish(p0, s0, j);
+				results[i + 1] = finish(p1, s1, j);
+				results[i + 2] = finish(p2, s2, j);
+				results[i + 3] = finish(p3, s3, j);
+			}
+		}
+		for (; i < inputs.length; i++)
+			results[i] = finish(initial, inputs[i], 0);
+	}
+
+	/**
+	 * Continues a run from the given state (-1 for none) and offset to the end of the input.
+	 * Like {@link #run(String)}, with a loop for each representation of the transition table.
+	 */
+	private boolean finish(int p, CharSequence s, int offset) {
+		int l = s.length();
+		int k = points.length;
+		byte[] sk = sinks;
+		if (p == -1)
+			return false;
+		if (sk[p] != SINK_NONE)
+			return accept[p];
+		if (ascii8 != null) {
+			byte[] a = ascii8;
+			byte[] t = transitions8;
+			for (int i = offset; i < l; i++) {
+				char c = s.charAt(i);
+				p = c < 128 ? a[(p << 7) | c] : t[p * k + getCharClass(c)];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (ascii16 != null) {
+			short[] a = ascii16;
+			short[] t = transitions16;
+			for (int i = offset; i < l; i++) {
+				char c = s.charAt(i);
+				p = c < 128 ? a[(p << 7) | c] : t[p * k + getCharClass(c)];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (transitions8 != null) {
+			byte[] t = transitions8;
+			for (int i = offset; i < l; i++) {
+				p = t[p * k + getCharClass(s.charAt(i))];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (transitions16 != null) {
+			short[] t = transitions16;
+			for (int i = offset; i < l; i++) {
+				p = t[p * k + getCharClass(s.charAt(i))];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else if (transitions != null) {
+			int[] t = transitions;
+			for (int i = offset; i < l; i++) {
+				p = t[p * k + getCharClass(s.charAt(i))];
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
+		} else {
+			for (int i = offset; i < l; i++) {
+				p = step(p, s.charAt(i));
+				if (p == -1)
+					return false;
+				if (sk[p] != SINK_NONE)
+					return accept[p];
+			}
 		}
 		return accept[p];
 	}
@@ -255,17 +1294,112 @@ public class RunAutomaton implements Serializable {
 		int l = s.length();
 		int max = -1;
 		for (int r = 0; offset <= l; offset++, r++) {
+			if (sinks[p] == SINK_ACCEPT)
+				return l - offset + r;
 			if (accept[p])
 				max = r;
 			if (offset == l)
 				break;
 			p = step(p, s.charAt(offset));
-			if (p == -1)
+			if (p == -1 || sinks[p] == SINK_REJECT)
 				break;
 		}
 		return max;
 	}
 
+	/**
+	 * Returns an <code>Automaton</code> that accepts the same language as this automaton.
+	 */
+	Automaton toAutomaton() {
+		State[] states = new State[size];
+		for (int n = 0; n < size; n++) {
+			states[n] = new State();
+			states[n].accept = accept[n];
+		}
+		int k = points.length;
+		for (int n = 0; n < size; n++)
+			for (int c = 0; c < k; c++) {
+				int q = getTransition(n * k + c);
+				if (q != -1) {
+					char max = c + 1 < k ? (char)(points[c + 1] - 1) : Character.MAX_VALUE;
+					states[n].transitions.add(new Transition(points[c], max, states[q]));
+				}
+			}
+		Automaton a = new Automaton();
+		a.initial = states[initial];
+		a.deterministic = true;
+		a.reduce();
+		return a;
+	}
+
+	/**
+	 * Finds the longest string that is a prefix of all accepted strings, by
+	 * following the states that are not accept states and have transitions on
+	 * only one char, and the bitmap of the char classes that have transitions
+	 * from the initial state, where class <i>c</i> is bit <code>c &amp; 63</code>
+	 * of word <code>c &gt;&gt;&gt; 6</code>. The bitmap is null if the initial state
+	 * is an accept state or has transitions on all chars, in which case a match
+	 * can start anywhere. Only the rows of the states on the prefix are read.
+	 * @see SpecialOperations#getCommonPrefix(Automaton)
+	 */
+	void setPrefix() {
+		StringBuilder b = new StringBuilder();
+		boolean[] visited = new boolean[size];
+		int k = points.length;
+		int p = initial;
+		while (!accept[p] && !visited[p]) {
+			visited[p] = true;
+			int q = -1;
+			char ch = 0;
+			for (int c = 0; c < k; c++) {
+				int r = getTransition(p * k + c);
+				if (r != -1) {
+					int max = c + 1 < k ? points[c + 1] - 1 : Character.MAX_VALUE;
+					if (q != -1 || points[c] != max) {
+						q = -1;
+						break;
+					}
+					q = r;
+					ch = points[c];
+				}
+			}
+			if (q == -1)
+				break;
+			b.append(ch);
+			p = q;
+		}
+		prefixstate = p;
+		prefix = b.toString();
+		startclasses = null;
+		if (!accept[initial]) {
+			long[] m = new long[(k + 63) >>> 6];
+			boolean all = true;
+			for (int c = 0; c < k; c++) {
+				if (getTransition(initial * k + c) != -1)
+					m[c >>> 6] |= 1L << (c & 63);
+				else
+					all = false;
+			}
+			if (!all)
+				startclasses = m;
+		}
+	}
+
+	/**
+	 * Returns an automaton that, when run backwards from the end of a string, 
+	 * is in an accept state after reading the char at position <i>i</i> if and only if
+	 * a substring starting at <i>i</i> is accepted by this automaton. 
+	 * The automaton is built on first use.
+	 */
+	synchronized RunAutomaton getStartAutomaton() {
+		if (starts == null) {
+			Automaton a = toAutomaton();
+			SpecialOperations.reverse(a);
+			starts = new RunAutomaton(BasicAutomata.makeAnyString().concatenate(a), ALPHABET_PAGED);
+		}
+		return starts;
+	}
+
 	/**
 	 * Creates a new automaton matcher for the given input.
 	 * @param s the CharSequence to search
@@ -276,13 +1410,46 @@ public class RunAutomaton implements Serializable {
 	}
 
 	/**
-	 * Creates a new automaton matcher for the given input.
+	 * Creates a new automaton matcher for the given part of the input.
+	 * The matcher searches <code>s.subSequence(startOffset, endOffset)</code>
+	 * and reports offsets relative to <code>startOffset</code>, but the chars are not copied.
 	 * @param s the CharSequence to search
 	 * @param startOffset the starting offset of the given character sequence
 	 * @param endOffset the ending offset of the given character sequence
 	 * @return A new automaton matcher for the given input
 	 */
 	public AutomatonMatcher newMatcher(CharSequence s, int startOffset, int endOffset)  {
-		return new AutomatonMatcher(s.subSequence(startOffset, endOffset), this);
+		return new AutomatonMatcher(s, this, startOffset, endOffset);
+	}
+
+	/**
+	 * Creates a new automaton matcher for the given part of an array.
+	 * The matcher reports offsets relative to <code>offset</code>, and the array is not copied.
+	 * @param s the array holding the characters to search
+	 * @param offset the offset of the first character to search
+	 * @param length the number of characters to search
+	 * @return A new automaton matcher for the given input
+	 */
+	public AutomatonMatcher newMatcher(char[] s, int offset, int length)  {
+		return new AutomatonMatcher(CharBuffer.wrap(s), this).reset(s, offset, length);
+	}
+
+	/**
+	 * Reports all matches in the given input to the given listener, 
+	 * in the same way as {@link AutomatonMatcher#forEach(MatchListener)}.
+	 * @param s the CharSequence to search
+	 * @param listener receiver of matches
+	 */
+	public void forEachMatch(CharSequence s, MatchListener listener) {
+		newMatcher(s).forEach(listener);
+	}
+
+	/**
+	 * Creates a new streaming matcher that reports matches to the given listener.
+	 * @param listener receiver of matches
+	 * @return A new streaming matcher
+	 */
+	public StreamMatcher newStreamMatcher(MatchListener listener) {
+		return new StreamMatcher(this, listener);
 	}
 }
@@ -0,0 +1,201 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Matcher that finds matches of a compiled automaton in input that is given in chunks.
+ * <p>
+ * Input is pushed with the <code>feed</code> methods, and the end of the input is
+ * signaled with {@link #finish()}. Matches are reported to a {@link MatchListener}
+ * with offsets relative to the start of the whole input, and are the same as those
+ * found by repeated calls to {@link AutomatonMatcher#find()} on the concatenated input
+ * (leftmost-longest, non-overlapping). A match is reported as soon as it can no
+ * longer be extended, which may be when the next chunk (or the end) is seen.
+ * <p>
+ * Only the chars from the start of the match attempt in progress are buffered.
+ * For patterns where an attempt can remain live indefinitely (such as <code>a.*</code>),
+ * the buffer may therefore grow until the attempt ends.
+ * <p>
+ * To match the contents of a <code>ReadableByteChannel</code>, wrap it with
+ * <code>java.nio.channels.Channels.newReader</code> and use {@link #feed(Reader)}.
+ * Instances are not thread safe.
+ */
+public class StreamMatcher {
+
+	private final RunAutomaton automaton;
+	private final MatchListener listener;
+
+	private char[] buffer = new char[1024];
+	private long base; // absolute offset of buffer[0]
+	private int length; // number of buffered chars
+	private long begin; // start of current match attempt
+	private long pos; // offset of next char to read in current attempt
+	private int state; // current state, -1 if dead
+	private long end; // end of longest match of current attempt, -1 if none
+	private boolean finished;
+
+	/**
+	 * Constructs a new <code>StreamMatcher</code>.
+	 * @param automaton a compiled automaton
+	 * @param listener receiver of matches
+	 * @see RunAutomaton#newStreamMatcher(MatchListener)
+	 */
+	public StreamMatcher(RunAutomaton automaton, MatchListener listener) {
+		this.automaton = automaton;
+		this.listener = listener;
+		restart();
+	}
+
+	/**
+	 * Feeds the given chars as the next part of the input.
+	 * @param buf char array
+	 * @param off offset of the first char
+	 * @param len number of chars
+	 * @exception IllegalStateException if {@link #finish()} has been called
+	 */
+	public void feed(char[] buf, int off, int len) {
+		if (finished)
+			throw new IllegalStateException("input already finished");
+		reserve(len);
+		System.arraycopy(buf, off, buffer, length, len);
+		length += len;
+		scan(false);
+	}
+
+	/**
+	 * Feeds the given string as the next part of the input.
+	 * @param s a string
+	 * @exception IllegalStateException if {@link #finish()} has been called
+	 */
+	public void feed(CharSequence s) {
+		if (finished)
+			throw new IllegalStateException("input already finished");
+		int l = s.length();
+		reserve(l);
+		for (int i = 0; i < l; i++)
+			buffer[length++] = s.charAt(i);
+		scan(false);
+	}
+
+	/**
+	 * Feeds the remaining contents of the given reader as the next part of the input.
+	 * The reader is not closed, and {@link #finish()} is not called.
+	 * @param r a reader
+	 * @exception IOException if reading fails
+	 * @exception IllegalStateException if {@link #finish()} has been called
+	 */
+	public void feed(Reader r) throws IOException {
+		char[] b = new char[8192];
+		int n;
+		while ((n = r.read(b)) != -1)
+			feed(b, 0, n);
+	}
+
+	/**
+	 * Signals the end of the input. Pending matches are reported.
+	 * Calling this method again has no effect.
+	 */
+	public void finish() {
+		if (!finished) {
+			scan(true);
+			finished = true;
+		}
+	}
+
+	/**
+	 * Returns the total number of chars fed so far.
+	 */
+	public long getPosition() {
+		return base + length;
+	}
+
+	/**
+	 * Returns the number of chars currently buffered for the match attempt in progress.
+	 */
+	public int getBuffered() {
+		return length;
+	}
+
+	/**
+	 * Starts a new match attempt at <code>begin</code>.
+	 */
+	private void restart() {
+		state = automaton.getInitialState();
+		pos = begin;
+		end = automaton.isAccept(state) ? begin : -1;
+	}
+
+	/**
+	 * Runs match attempts on the buffered input until more input is needed,
+	 * or, at the end of the input, until no more matches are possible.
+	 */
+	private void scan(boolean eof) {
+		long limit = base + length;
+		while (begin <= limit) {
+			if (state != -1 && pos < limit) {
+				state = automaton.step(state, buffer[(int)(pos - base)]);
+				pos++;
+				if (state != -1 && automaton.isAccept(state))
+					end = pos;
+				continue;
+			}
+			if (state != -1 && !eof)
+				break;
+			// attempt from begin cannot be extended
+			if (end != -1) {
+				listener.match(begin, end);
+				begin = end == begin ? begin + 1 : end;
+			} else
+				begin++;
+			restart();
+		}
+	}
+
+	/**
+	 * Discards the chars before the current match attempt and makes room for
+	 * <code>n</code> more chars.
+	 */
+	private void reserve(int n) {
+		int d = (int)(Math.min(begin, base + length) - base);
+		if (d > 0) {
+			System.arraycopy(buffer, d, buffer, 0, length - d);
+			base += d;
+			length -= d;
+		}
+		if (length + n > buffer.length) {
+			char[] b = new char[Math.max(buffer.length * 2, length + n)];
+			System.arraycopy(buffer, 0, b, 0, length);
+			buffer = b;
+		}
+	}
+}